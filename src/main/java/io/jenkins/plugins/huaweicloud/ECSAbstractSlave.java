@@ -8,6 +8,8 @@ import hudson.slaves.ComputerLauncher;
 import hudson.slaves.NodeProperty;
 import hudson.slaves.RetentionStrategy;
 import hudson.util.Secret;
+import io.jenkins.plugins.huaweicloud.util.FleetInventory;
+import io.jenkins.plugins.huaweicloud.util.InstanceStatusLookup;
 import io.jenkins.plugins.huaweicloud.util.ResettableCountDownLatch;
 import io.jenkins.plugins.huaweicloud.util.TimeUtils;
 import io.jenkins.plugins.huaweicloud.util.VPCHelper;
@@ -20,7 +22,6 @@ import org.kohsuke.stapler.StaplerRequest;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
@@ -58,6 +59,12 @@ public abstract class ECSAbstractSlave extends Slave {
 
     private transient long createdTime;
 
+    /* When the agent was asked for and whether it came from a stopped instance, until it is online */
+    private transient long provisionedTime;
+    private transient boolean warmStart;
+    /* Created for the warm pool: takes no task while it bootstraps and is stopped once online */
+    private transient volatile boolean joiningWarmPool;
+
     protected static final long MIN_FETCH_TIME = Long.getLong("io.jenkins.plugins.huaweicloud.ECSAbstractSlave.MIN_FETCH_TIME",
             TimeUnit.SECONDS.toMillis(20));
 
@@ -119,6 +126,17 @@ public abstract class ECSAbstractSlave extends Slave {
         return (VPC) Jenkins.get().getCloud(cloudName);
     }
 
+    /**
+     * @throws SdkException when the cloud of this agent was removed from the configuration
+     */
+    VPC requireCloud() throws SdkException {
+        VPC cloud = getCloud();
+        if (cloud == null) {
+            throw new SdkException("Cloud " + cloudName + " of agent " + getNodeName() + " no longer exists");
+        }
+        return cloud;
+    }
+
     public boolean getStopOnTerminate() {
         return stopOnTerminate;
     }
@@ -157,7 +175,7 @@ public abstract class ECSAbstractSlave extends Slave {
 
     @Override
     public boolean isAcceptingTasks() {
-        return terminateScheduled.getCount() == 0;
+        return !joiningWarmPool && terminateScheduled.getCount() == 0;
     }
 
     public String getRemoteAdmin() {
@@ -200,6 +218,10 @@ public abstract class ECSAbstractSlave extends Slave {
         return !VPCHelper.isTerminated(lastFetchInstance.getStatus());
     }
 
+    /**
+     * Refreshes the cached instance and its tags. Unless forced, the instance is read from the {@link FleetInventory}
+     * of the cloud, which carries the tags of every instance, and only described when the inventory doesn't know it.
+     */
     protected void fetchLiveInstanceData(boolean force) throws SdkException {
         long now = System.currentTimeMillis();
         if ((lastFetchTime > 0) && (now - lastFetchTime < MIN_FETCH_TIME) && !force) {
@@ -209,54 +231,61 @@ public abstract class ECSAbstractSlave extends Slave {
         if (StringUtils.isEmpty(getInstanceId())) {
             return;
         }
-        ServerDetail instance;
-        try {
-            instance = VPCHelper.getInstanceWithRetry(getInstanceId(), getCloud());
-        } catch (InterruptedException e) {
-            LOGGER.fine("InterruptedException while get " + getInstanceId()
-                    + " Exception: " + e);
+        VPC cloud = getCloud();
+        if (cloud == null) {
+            LOGGER.log(Level.FINE, "Cloud {0} of agent {1} no longer exists", new Object[]{cloudName, getNodeName()});
             return;
         }
+        ServerDetail instance = null;
+        if (!force) {
+            instance = cloud.getInventory().snapshot(FleetInventory.STATUS_MAX_AGE).get(getInstanceId());
+        }
+        if (instance == null) {
+            try {
+                instance = cloud.getStatusLookup().get(getInstanceId(), force ? 0 : InstanceStatusLookup.MAX_AGE);
+            } catch (InterruptedException e) {
+                LOGGER.fine("InterruptedException while get " + getInstanceId()
+                        + " Exception: " + e);
+                return;
+            }
+        }
         lastFetchTime = now;
         lastFetchInstance = instance;
         if (instance == null) {
             return;
         }
         createdTime = TimeUtils.dateStrToLong(instance.getCreated());
-        try {
-            List<ServerTag> serverTags = VPCHelper.getServerTags(getInstanceId(), getCloud());
-            if (!serverTags.isEmpty()) {
-                //update tags
-                tags = new LinkedList<>();
-                for (ServerTag tag : serverTags) {
-                    tags.add(new ECSTag(tag.getKey(), tag.getValue()));
-                }
-            }
-        } catch (SdkException e) {
-            LOGGER.log(Level.FINE, e.getMessage());
+        List<ECSTag> instanceTags = ECSTag.formServerDetailTags(instance.getTags());
+        if (instanceTags != null && !instanceTags.isEmpty()) {
+            //update tags
+            tags = instanceTags;
         }
-
     }
 
     protected void clearLiveInstanceData() throws SdkException {
+        VPC cloud = requireCloud();
         ServerDetail instance;
         try {
-            instance = VPCHelper.getInstanceWithRetry(getInstanceId(), getCloud());
+            instance = cloud.getStatusLookup().get(getInstanceId());
         } catch (InterruptedException e) {
             LOGGER.fine("InterruptedException while get " + getInstanceId()
                     + " Exception: " + e);
             return;
         }
-        List<ServerTag> serverTags = VPCHelper.getServerTags(instance.getId(), getCloud());
+        if (instance == null) {
+            return;
+        }
+        List<ServerTag> serverTags = VPCHelper.getServerTags(instance.getId(), cloud);
         if (!serverTags.isEmpty()) {
-            VPCHelper.deleteServerTags(getInstanceId(), serverTags, getCloud());
+            VPCHelper.deleteServerTags(getInstanceId(), serverTags, cloud);
         }
     }
 
     protected void pushLiveInstanceData() throws SdkException {
+        VPC cloud = requireCloud();
         ServerDetail instance;
         try {
-            instance = VPCHelper.getInstanceWithRetry(getInstanceId(), getCloud());
+            instance = cloud.getStatusLookup().get(getInstanceId());
         } catch (InterruptedException e) {
             LOGGER.fine("InterruptedException while get " + getInstanceId()
                     + " Exception: " + e);
@@ -267,7 +296,7 @@ public abstract class ECSAbstractSlave extends Slave {
             for (ECSTag tag : tags) {
                 srvTags.add(new ServerTag().withKey(tag.getName()).withValue(tag.getValue()));
             }
-            VPCHelper.createServerTags(getInstanceId(), srvTags, getCloud());
+            VPCHelper.createServerTags(getInstanceId(), srvTags, cloud);
         }
     }
 
@@ -301,24 +330,68 @@ public abstract class ECSAbstractSlave extends Slave {
         return false;
     }
 
+    /**
+     * Remembers when provisioning asked for this agent, to report its time to online.
+     *
+     * @param warm whether the agent is started from a stopped instance rather than created
+     */
+    public void provisioned(long requestedTime, boolean warm) {
+        this.provisionedTime = requestedTime;
+        this.warmStart = warm;
+    }
+
+    /**
+     * Marks the agent as created for the warm pool, to be added to Jenkins afterwards.
+     */
+    public void joinWarmPool() {
+        this.joiningWarmPool = true;
+    }
+
+    /**
+     * Records the time from provisioning to online as {@code online.warm} or {@code online.cold}, once, and stops
+     * the instance of an agent joining the warm pool now that it is bootstrapped.
+     */
+    void launched() {
+        VPC cloud = getCloud();
+        if (provisionedTime > 0 && cloud != null) {
+            cloud.getStatistics().recordTime(warmStart ? "online.warm" : "online.cold", System.currentTimeMillis() - provisionedTime);
+        }
+        provisionedTime = 0;
+        if (joiningWarmPool) {
+            LOGGER.log(Level.INFO, "Stopping bootstrapped instance {0} into the warm pool", instanceId);
+            stop();
+        }
+    }
+
     void idleTimeout() {
         LOGGER.info("ECS instance idle time expired: " + getInstanceId());
-        if (!stopOnTerminate)
-            terminate();
-        else
+        VPC cloud = getCloud();
+        if (stopOnTerminate || (cloud != null && cloud.getWarmPool().offer(this)))
             stop();
+        else
+            terminate();
     }
 
-    private void stop() {
-        try {
-            VPCHelper.stopECSInstance(instanceId, getCloud());
+    /**
+     * Stops the instance and disconnects the agent, which stays in Jenkins to be started again.
+     */
+    public void stop() {
+        VPC cloud = getCloud();
+        if (cloud == null) {
+            LOGGER.log(Level.WARNING, "Cannot stop ECS instance {0}, cloud {1} no longer exists", new Object[]{instanceId, cloudName});
+            return;
+        }
+        cloud.getActionQueue().stop(instanceId).whenComplete((v, error) -> {
+            if (error != null) {
+                LOGGER.log(Level.WARNING, "ECS instance idle time out stop and disconnected exception:" + error.getMessage());
+                return;
+            }
             Computer computer = toComputer();
             if (computer != null) {
                 computer.disconnect(null);
             }
-        } catch (SdkException e) {
-            LOGGER.log(Level.WARNING, "ECS instance idle time out stop and disconnected exception:" + e.getMessage());
-        }
+            joiningWarmPool = false;
+        });
     }
 
     void launchTimeout() {
@@ -6,6 +6,7 @@ import edu.umd.cs.findbugs.annotations.CheckForNull;
 import hudson.Util;
 import hudson.model.Node;
 import hudson.slaves.SlaveComputer;
+import io.jenkins.plugins.huaweicloud.util.FleetInventory;
 import io.jenkins.plugins.huaweicloud.util.TimeUtils;
 import io.jenkins.plugins.huaweicloud.util.VPCHelper;
 import org.kohsuke.stapler.HttpRedirect;
@@ -52,10 +53,8 @@ public class ECSComputer extends SlaveComputer {
     @CheckForNull
     public ECSTemplate getSlaveTemplate() {
         ECSAbstractSlave node = getNode();
-        if (node != null) {
-            return node.getCloud().getTemplate(node.templateDescription);
-        }
-        return null;
+        VPC cloud = node == null ? null : node.getCloud();
+        return cloud == null ? null : cloud.getTemplate(node.templateDescription);
     }
 
     /**
@@ -69,7 +68,7 @@ public class ECSComputer extends SlaveComputer {
      */
     public ServerDetail describeInstance() throws SdkException, InterruptedException {
         if (ecsInstanceDescription == null)
-            ecsInstanceDescription = VPCHelper.getInstanceWithRetry(getInstanceId(), getCloud());
+            ecsInstanceDescription = requireCloud().getStatusLookup().get(getInstanceId());
         return ecsInstanceDescription;
     }
 
@@ -77,12 +76,39 @@ public class ECSComputer extends SlaveComputer {
      * This will flush any cached description held by {@link #describeInstance()}.
      */
     public ServerDetail updateInstanceDescription() throws SdkException, InterruptedException {
-        return ecsInstanceDescription = VPCHelper.getInstanceWithRetry(getInstanceId(), getCloud());
+        return ecsInstanceDescription = requireCloud().getStatusLookup().get(getInstanceId(), 0);
     }
 
+    /**
+     * @throws SdkException when the agent or its cloud was removed
+     */
+    private VPC requireCloud() throws SdkException {
+        ECSAbstractSlave node = getNode();
+        if (node == null) {
+            throw new SdkException("Agent " + getName() + " no longer exists");
+        }
+        return node.requireCloud();
+    }
+
+    /**
+     * Returns the instance state, read from the {@link FleetInventory} of the cloud when it is at most
+     * {@link FleetInventory#STATUS_MAX_AGE} old. Instances the inventory does not know yet, or not anymore, are
+     * described through the {@link io.jenkins.plugins.huaweicloud.util.InstanceStatusLookup} of the cloud. Instances
+     * ECS does not know are reported as DELETED.
+     *
+     * @throws SdkException when the state could not be read, or the cloud of the agent was removed
+     */
     public String getStatus() throws SdkException, InterruptedException {
-        ecsInstanceDescription = VPCHelper.getInstanceWithRetry(getInstanceId(), getCloud());
-        return ecsInstanceDescription.getStatus();
+        VPC cloud = requireCloud();
+        ServerDetail instance = cloud.getInventory().snapshot(FleetInventory.STATUS_MAX_AGE).get(getInstanceId());
+        if (instance == null) {
+            instance = cloud.getStatusLookup().get(getInstanceId());
+        }
+        if (instance == null) {
+            return "DELETED";
+        }
+        ecsInstanceDescription = instance;
+        return instance.getStatus();
     }
 
     /**
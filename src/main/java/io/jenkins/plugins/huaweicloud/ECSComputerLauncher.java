@@ -4,8 +4,13 @@ import com.huaweicloud.sdk.core.exception.SdkException;
 import hudson.model.TaskListener;
 import hudson.slaves.ComputerLauncher;
 import hudson.slaves.SlaveComputer;
+import io.jenkins.plugins.huaweicloud.util.ECSExecutors;
+import io.jenkins.plugins.huaweicloud.util.LaunchScheduler;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,8 +22,10 @@ public abstract class ECSComputerLauncher extends ComputerLauncher {
         //when launch fail delete the ecs instance and  avoid repeated creation of offline nodes
         try {
             ECSComputer computer = (ECSComputer) slaveComputer;
-            if (!launchScript(computer, listener)) {
+            if (!launchWhenAdmitted(computer, listener)) {
                 shutdownInstance(slaveComputer);
+            } else if (computer.getNode() != null) {
+                computer.getNode().launched();
             }
         } catch (SdkException | IOException e) {
             LOGGER.log(Level.FINE, String.format("Terminating the ecs agent %s due a problem launching or connecting to it", slaveComputer.getName()), e);
@@ -32,6 +39,47 @@ public abstract class ECSComputerLauncher extends ComputerLauncher {
         }
     }
 
+    /**
+     * Runs {@link #launchScript} on {@link ECSExecutors#launcher()} once the {@link LaunchScheduler} of the cloud
+     * admits it, no thread being held while it waits for admission. Jenkins considers the launch failed when this
+     * method returns before the channel is set, so the calling thread waits for the launch.
+     */
+    private boolean launchWhenAdmitted(ECSComputer computer, TaskListener listener)
+            throws SdkException, IOException, InterruptedException {
+        VPC cloud = computer.getCloud();
+        CompletableFuture<LaunchScheduler.Permit> admission = cloud == null
+                ? CompletableFuture.completedFuture(null)
+                : cloud.getLaunchScheduler().admit(computer.getNode());
+        CompletableFuture<Boolean> launched = admission.thenApplyAsync(permit -> {
+            try (LaunchScheduler.Permit ignored = permit) {
+                return launchScript(computer, listener);
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }, ECSExecutors.launcher());
+        try {
+            return launched.get();
+        } catch (InterruptedException e) {
+            // a launch already admitted runs to its end and closes its permit
+            admission.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SdkException) {
+                throw (SdkException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
     private void shutdownInstance(SlaveComputer slaveComputer) {
         if (slaveComputer.getNode() instanceof ECSAbstractSlave) {
             ECSAbstractSlave ec2AbstractSlave = (ECSAbstractSlave) slaveComputer.getNode();
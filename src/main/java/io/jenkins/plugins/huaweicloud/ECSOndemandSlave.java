@@ -3,12 +3,11 @@ package io.jenkins.plugins.huaweicloud;
 import com.huaweicloud.sdk.core.exception.SdkException;
 import edu.umd.cs.findbugs.annotations.NonNull;
 import hudson.Extension;
-import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Node;
 import hudson.slaves.ComputerLauncher;
 import hudson.slaves.NodeProperty;
-import io.jenkins.plugins.huaweicloud.util.VPCHelper;
+import io.jenkins.plugins.huaweicloud.util.ECSExecutors;
 import jenkins.model.Jenkins;
 import net.sf.json.JSONObject;
 import org.jetbrains.annotations.NotNull;
@@ -17,6 +16,7 @@ import org.kohsuke.stapler.StaplerRequest;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -41,22 +41,36 @@ public class ECSOndemandSlave extends ECSAbstractSlave {
         if (terminateScheduled.getCount() == 0) {
             synchronized (terminateScheduled) {
                 if (terminateScheduled.getCount() == 0) {
-                    Computer.threadPoolForRemoting.submit(() -> {
+                    ECSExecutors.termination().submit(() -> {
+                        CompletableFuture<Void> deleted;
                         try {
                             if (!isAlive(true)) {
                                 LOGGER.info("ECS instance already terminated: " + getInstanceId());
+                                deleted = CompletableFuture.completedFuture(null);
                             } else {
-                                VPCHelper.deleteServer(getInstanceId(), getCloud());
-                            }
-                            Jenkins.get().removeNode(this);
-                            LOGGER.info("Removed EC2 instance from jenkins master: " + getInstanceId());
-                        } catch (SdkException | IOException e) {
-                            LOGGER.log(Level.WARNING, "Failed to terminate EC2 instance: " + getInstanceId(), e);
-                        } finally {
-                            synchronized (terminateScheduled) {
-                                terminateScheduled.countDown();
+                                deleted = requireCloud().getActionQueue().delete(getInstanceId());
                             }
+                        } catch (SdkException e) {
+                            deleted = new CompletableFuture<>();
+                            deleted.completeExceptionally(e);
                         }
+                        // the node is only removed once ECS confirmed the deletion
+                        deleted.whenComplete((v, error) -> {
+                            try {
+                                if (error != null) {
+                                    LOGGER.log(Level.WARNING, "Failed to terminate EC2 instance: " + getInstanceId(), error);
+                                    return;
+                                }
+                                Jenkins.get().removeNode(this);
+                                LOGGER.info("Removed EC2 instance from jenkins master: " + getInstanceId());
+                            } catch (IOException e) {
+                                LOGGER.log(Level.WARNING, "Failed to terminate EC2 instance: " + getInstanceId(), e);
+                            } finally {
+                                synchronized (terminateScheduled) {
+                                    terminateScheduled.countDown();
+                                }
+                            }
+                        });
                     });
                     terminateScheduled.reset();
                 }
@@ -1,22 +1,33 @@
 package io.jenkins.plugins.huaweicloud;
 
 import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.Extension;
 import hudson.init.InitMilestone;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
 import hudson.model.Descriptor;
 import hudson.model.Executor;
 import hudson.model.ExecutorListener;
 import hudson.model.Queue;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
 import hudson.slaves.RetentionStrategy;
-import io.jenkins.plugins.huaweicloud.util.MinimumInstanceChecker;
+import io.jenkins.plugins.huaweicloud.util.FleetInventory;
+import io.jenkins.plugins.huaweicloud.util.TimeUtils;
 import io.jenkins.plugins.huaweicloud.util.VPCHelper;
 import jenkins.model.Jenkins;
 import org.jetbrains.annotations.NotNull;
 import org.kohsuke.stapler.DataBoundConstructor;
 
+import javax.annotation.CheckForNull;
 import java.time.Clock;
-import java.util.Objects;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -26,7 +37,6 @@ public class ECSRetentionStrategy extends RetentionStrategy<ECSComputer> impleme
     private long nextCheckAfter = -1;
     private transient Clock clock;
     private final int idleTerminationMinutes;
-    private transient ReentrantLock checkLock;
     private static final int STARTUP_TIME_DEFAULT_VALUE = 30;
 
     @DataBoundConstructor
@@ -57,7 +67,6 @@ public class ECSRetentionStrategy extends RetentionStrategy<ECSComputer> impleme
     }
 
     protected Object readResolve() {
-        checkLock = new ReentrantLock(false);
         clock = Clock.systemUTC();
         return this;
     }
@@ -76,7 +85,7 @@ public class ECSRetentionStrategy extends RetentionStrategy<ECSComputer> impleme
             String state = null;
             try {
                 state = c.getStatus();
-            } catch (SdkException | InterruptedException | NullPointerException e) {
+            } catch (SdkException | InterruptedException e) {
                 LOGGER.log(Level.FINE, "Error getting ECS instance state for " + c.getName(), e);
             }
             if (!"ACTIVE".equals(state)) {
@@ -143,114 +152,222 @@ public class ECSRetentionStrategy extends RetentionStrategy<ECSComputer> impleme
         }
     }
 
+    /**
+     * The agents are checked together, per cloud, by {@link FleetCheck}.
+     */
     @Override
     public long check(@NotNull ECSComputer ecsComputer) {
-        if (!checkLock.tryLock()) {
-            return 1;
-        } else {
-            try {
-                long currentTime = this.clock.millis();
-                if (currentTime > nextCheckAfter) {
-                    long intervalMinutes = internalCheck(ecsComputer);
-                    nextCheckAfter = currentTime + TimeUnit.MINUTES.toMillis(intervalMinutes);
-                    return intervalMinutes;
-                } else {
-                    return 1;
+        return 1;
+    }
+
+    /**
+     * Applies the retention of all the agents of a cloud from a single {@link FleetInventory} snapshot: agents of
+     * stopped or deleted instances are disconnected, agents that failed to come online within their launch timeout
+     * are terminated, and idle agents beyond the minimums of their template are stopped or terminated. The stops and
+     * deletions go through the {@link io.jenkins.plugins.huaweicloud.util.InstanceActionQueue} of the cloud, which
+     * batches them.
+     */
+    static void evaluate(VPC cloud) throws SdkException {
+        evaluate(cloud, cloud.getInventory().snapshot(FleetInventory.STATUS_MAX_AGE));
+    }
+
+    static void evaluate(VPC cloud, FleetInventory.Snapshot snapshot) {
+        long start = System.currentTimeMillis();
+        Map<ECSTemplate, TemplateCounts> counts = new HashMap<>();
+        List<ECSComputer> computers = new ArrayList<>();
+        for (Computer c : Jenkins.get().getComputers()) {
+            if (!(c instanceof ECSComputer)) {
+                continue;
+            }
+            ECSAbstractSlave node = ((ECSComputer) c).getNode();
+            if (node == null || !cloud.name.equals(node.cloudName)) {
+                continue;
+            }
+            computers.add((ECSComputer) c);
+            ECSTemplate t = cloud.getTemplate(node, snapshot.get(node.getInstanceId()));
+            if (t != null) {
+                TemplateCounts count = counts.computeIfAbsent(t, k -> new TemplateCounts());
+                count.agents++;
+                if (c.isIdle() && c.isOnline()) {
+                    count.spareAgents++;
                 }
-            } finally {
-                checkLock.unlock();
             }
         }
+        // the agents idle for the longest go first
+        computers.sort(Comparator.comparingLong(Computer::getIdleStartMilliseconds));
+        for (ECSComputer computer : computers) {
+            ECSAbstractSlave node = computer.getNode();
+            if (node == null || !(node.getRetentionStrategy() instanceof ECSRetentionStrategy)) {
+                continue;
+            }
+            ECSTemplate t = cloud.getTemplate(node, snapshot.get(node.getInstanceId()));
+            try {
+                ((ECSRetentionStrategy) node.getRetentionStrategy()).evaluate(computer, node, t,
+                        t == null ? null : counts.get(t), snapshot);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Failed to check the retention of " + computer.getName(), e);
+            }
+        }
+        cloud.getStatistics().recordTime("retention.evaluate", System.currentTimeMillis() - start);
     }
 
-    private long internalCheck(ECSComputer computer) {
-        // If we've been told never to terminate, or node is null(deleted), no checks to perform
-        if (idleTerminationMinutes == 0 || computer.getNode() == null) {
-            return 1;
+    private void evaluate(ECSComputer computer, ECSAbstractSlave node, @CheckForNull ECSTemplate slaveTemplate,
+                          @CheckForNull TemplateCounts counts, FleetInventory.Snapshot snapshot) {
+        // If we've been told never to terminate, no checks to perform
+        if (idleTerminationMinutes == 0) {
+            return;
         }
+        long now = this.clock.millis();
+        nextCheckAfter = now + FleetCheck.RECURRENCE;
 
-        //If we have equal or less number of slaves than the template's minimum instance count, don't perform check.
-        ECSTemplate slaveTemplate = computer.getSlaveTemplate();
-        if (slaveTemplate != null) {
-            long numberOfCurrentInstancesForTemplate = MinimumInstanceChecker.countCurrentNumberOfAgents(slaveTemplate);
-            if (numberOfCurrentInstancesForTemplate > 0 && numberOfCurrentInstancesForTemplate <= slaveTemplate.getMinimumNumberOfInstances()) {
-               // TODO:Check if we're in an active time-range for keeping minimum number of instances
-                return 1;
+        //If we have equal or less number of slaves than the template's minimum instance count, or of idle slaves than
+        //its minimum spare instance count, within the schedule of the template, don't perform check.
+        if (slaveTemplate != null && counts != null && slaveTemplate.isMinimumInstancesActive(now)) {
+            if (counts.agents > 0 && counts.agents <= slaveTemplate.getMinimumNumberOfInstances()) {
+                return;
+            }
+            if (slaveTemplate.getMinimumNumberOfSpareInstances() > 0 && computer.isIdle() && computer.isOnline()
+                    && counts.spareAgents <= slaveTemplate.getMinimumNumberOfSpareInstances()) {
+                return;
             }
         }
 
-        if (computer.isIdle() && !DISABLED) {
-            final long uptime;
-            String state;
-            try {
-                state = computer.getStatus();
-                uptime = computer.getUptime();
-            } catch (SdkException | InterruptedException e) {
-                LOGGER.fine("Exception while checking host uptime for " + computer.getName()
-                        + ", will retry next check. Exception: " + e);
-                return 1;
-            }
-            if (VPCHelper.isTerminated(state) || (slaveTemplate != null && slaveTemplate.stopOnTerminate) && "SHUTOFF".equals(state)) {
-                if (computer.isOnline()) {
-                    computer.disconnect(null);
-                }
-                return 1;
+        if (!computer.isIdle() || DISABLED) {
+            return;
+        }
+        ServerDetail instance = snapshot.get(node.getInstanceId());
+        if (instance == null) {
+            LOGGER.log(Level.FINE, "Instance {0} of {1} is not in the inventory yet, will check it next time",
+                    new Object[]{node.getInstanceId(), computer.getName()});
+            return;
+        }
+        String state = instance.getStatus();
+        final long uptime = now - TimeUtils.dateStrToLong(instance.getUpdated());
+        // stopped instances are kept when the template stops its agents or keeps a warm pool
+        if (VPCHelper.isTerminated(state) || (slaveTemplate != null && (slaveTemplate.stopOnTerminate
+                || slaveTemplate.getWarmPoolSize() > 0)) && "SHUTOFF".equals(state)) {
+            if (computer.isOnline()) {
+                computer.disconnect(null);
             }
+            return;
+        }
 
-            //on rare occasions, HWC may return fault instance which shows running in Huawei cloud console but can not be connected.
-            //need terminate such fault instance.
-            //an instance may also fail running user data scripts and need to be cleaned up.
-            if (computer.isOffline()) {
-                if (computer.isConnecting()) {
-                    LOGGER.log(Level.FINE, "Computer {0} connecting and still offline, will check if the launch timeout has expired", computer.getInstanceId());
-                }
-                ECSAbstractSlave node = computer.getNode();
-                if (Objects.isNull(node)) {
-                    return 1;
-                }
-                long launchTimeout = node.getLaunchTimeoutInMillis();
-                if (launchTimeout > 0 && uptime > launchTimeout) {
-                    // Computer is offline and startup time has expired
-                    LOGGER.info("Startup timeout of " + computer.getName() + " after "
-                            + uptime +
-                            " milliseconds (timeout: " + launchTimeout + " milliseconds), instance status: " + state);
-                    node.launchTimeout();
+        //on rare occasions, HWC may return fault instance which shows running in Huawei cloud console but can not be connected.
+        //need terminate such fault instance.
+        //an instance may also fail running user data scripts and need to be cleaned up.
+        if (computer.isOffline()) {
+            if (computer.isConnecting()) {
+                LOGGER.log(Level.FINE, "Computer {0} connecting and still offline, will check if the launch timeout has expired", computer.getInstanceId());
+            }
+            long launchTimeout = node.getLaunchTimeoutInMillis();
+            if (launchTimeout > 0 && uptime > launchTimeout) {
+                // Computer is offline and startup time has expired
+                LOGGER.info("Startup timeout of " + computer.getName() + " after "
+                        + uptime +
+                        " milliseconds (timeout: " + launchTimeout + " milliseconds), instance status: " + state);
+                node.launchTimeout();
+                released(counts, computer);
+            }
+            return;
+        }
+        final long idleMilliseconds = now - computer.getIdleStartMilliseconds();
+        if (idleTerminationMinutes > 0) {
+            // TODO: really think about the right strategy here, see  JENKINS-23792
+            if (idleMilliseconds > TimeUnit.MINUTES.toMillis(idleTerminationMinutes)) {
+                if (isForecastToBeNeeded(computer, slaveTemplate, counts)) {
+                    return;
                 }
-                return 1;
+
+                LOGGER.info("Idle timeout of " + computer.getName() + " after "
+                        + TimeUnit.MILLISECONDS.toMinutes(idleMilliseconds) +
+                        " idle minutes, instance status" + state);
+                node.idleTimeout();
+                released(counts, computer);
             } else {
-                LOGGER.log(Level.FINE, "Computer {0} offline but not connecting, will check if it should be terminated because of the idle time configured", computer.getInstanceId());
+                //TODO: think about that this is useful to huawei cloud
+                final int oneHourSeconds = (int) TimeUnit.SECONDS.convert(1, TimeUnit.HOURS);
+                final int freeSecondsLeft = oneHourSeconds
+                        - (int) (TimeUnit.SECONDS.convert(uptime, TimeUnit.MILLISECONDS) % oneHourSeconds);
+                if (freeSecondsLeft <= TimeUnit.MINUTES.toSeconds(Math.abs(idleTerminationMinutes))
+                        && !isForecastToBeNeeded(computer, slaveTemplate, counts)) {
+                    LOGGER.info("Idle timeout of " + computer.getName() + " after "
+                            + TimeUnit.MILLISECONDS.toMinutes(idleMilliseconds) + " idle minutes, with "
+                            + TimeUnit.SECONDS.toMinutes(freeSecondsLeft)
+                            + " minutes remaining in billing period");
+                    node.idleTimeout();
+                    released(counts, computer);
+                }
             }
-            final long idleMilliseconds = this.clock.millis() - computer.getIdleStartMilliseconds();
-            if (idleTerminationMinutes > 0) {
-                // TODO: really think about the right strategy here, see  JENKINS-23792
-                if (idleMilliseconds > TimeUnit.MINUTES.toMillis(idleTerminationMinutes)) {
+        }
+    }
 
-                    LOGGER.info("Idle timeout of " + computer.getName() + " after "
-                            + TimeUnit.MILLISECONDS.toMinutes(idleMilliseconds) +
-                            " idle minutes, instance status" + state);
-                    ECSAbstractSlave slaveNode = computer.getNode();
-                    if (slaveNode != null) {
-                        slaveNode.idleTimeout();
-                    }
-                } else {
-                    //TODO: think about that this is useful to huawei cloud
-                    final int oneHourSeconds = (int) TimeUnit.SECONDS.convert(1, TimeUnit.HOURS);
-                    final int freeSecondsLeft = oneHourSeconds
-                            - (int) (TimeUnit.SECONDS.convert(uptime, TimeUnit.MILLISECONDS) % oneHourSeconds);
-                    if (freeSecondsLeft <= TimeUnit.MINUTES.toSeconds(Math.abs(idleTerminationMinutes))) {
-                        LOGGER.info("Idle timeout of " + computer.getName() + " after "
-                                + TimeUnit.MILLISECONDS.toMinutes(idleMilliseconds) + " idle minutes, with "
-                                + TimeUnit.SECONDS.toMinutes(freeSecondsLeft)
-                                + " minutes remaining in billing period");
-                        ECSAbstractSlave slaveNode = computer.getNode();
-                        if (slaveNode != null) {
-                            slaveNode.idleTimeout();
-                        }
+    /* the following agents of the template are checked against the minimums without this one */
+    private static void released(@CheckForNull TemplateCounts counts, ECSComputer computer) {
+        if (counts != null) {
+            counts.agents--;
+            if (computer.isOnline()) {
+                counts.spareAgents--;
+            }
+        }
+    }
+
+    /**
+     * @return whether the predictive provisioning of the cloud still needs the executors of the agent
+     */
+    private static boolean isForecastToBeNeeded(ECSComputer computer, @CheckForNull ECSTemplate slaveTemplate,
+                                                @CheckForNull TemplateCounts counts) {
+        if (slaveTemplate == null || counts == null || !(slaveTemplate.getParent() instanceof HuaweiVPC)
+                || !((HuaweiVPC) slaveTemplate.getParent()).isPredictiveProvisioning()) {
+            return false;
+        }
+        int target = slaveTemplate.getParent().getForecaster().getTarget(PredictiveProvisionerStrategy.prefix(slaveTemplate));
+        int executors = counts.agents * slaveTemplate.getNumExecutors();
+        if (executors <= target) {
+            LOGGER.log(Level.FINE, "Keeping idle {0}, the forecast still needs {1} executor(s) of {2}",
+                    new Object[]{computer.getName(), target, slaveTemplate});
+            return true;
+        }
+        return false;
+    }
+
+    private static final class TemplateCounts {
+        int agents;
+        int spareAgents;
+    }
+
+    /**
+     * Checks the retention of the agents of every cloud.
+     */
+    @Extension
+    public static class FleetCheck extends AsyncPeriodicWork {
+        private static final long RECURRENCE = Long.getLong(ECSRetentionStrategy.class.getName() + ".RECURRENCE",
+                TimeUnit.MINUTES.toMillis(1));
+
+        public FleetCheck() {
+            super("Huawei Cloud retention");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return RECURRENCE;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            for (Cloud c : Jenkins.get().clouds) {
+                if (c instanceof VPC) {
+                    try {
+                        evaluate((VPC) c);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to check the retention of the agents of " + c.name, e);
                     }
                 }
             }
         }
 
-        return 1;
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
     }
 }
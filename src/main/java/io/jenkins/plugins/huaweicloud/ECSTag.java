@@ -17,6 +17,8 @@ public class ECSTag extends AbstractDescribableImpl<ECSTag> {
 
     public static final String TAG_NAME_JENKINS_SLAVE_TYPE = "jenkins_slave_type";
     public static final String TAG_NAME_JENKINS_SERVER_URL = "jenkins_server_url";
+    /* Stamped on every instance created from a template, with the template fingerprint as value */
+    public static final String TAG_NAME_JENKINS_TEMPLATE = "jenkins_template_fingerprint";
 
     @DataBoundConstructor
     public ECSTag(String name, String value) {
@@ -34,6 +36,25 @@ public class ECSTag extends AbstractDescribableImpl<ECSTag> {
         return result;
     }
 
+    /**
+     * Parses the {@code key=value} tags returned with {@link com.huaweicloud.sdk.ecs.v2.model.ServerDetail#getTags()},
+     * so that listing or describing an instance is enough to know its tags.
+     */
+    public static List<ECSTag> formServerDetailTags(List<String> detailTags) {
+        if (null == detailTags)
+            return null;
+        LinkedList<ECSTag> result = new LinkedList<>();
+        for (String tag : detailTags) {
+            int separator = tag.indexOf('=');
+            if (separator < 0) {
+                result.add(new ECSTag(tag, ""));
+            } else {
+                result.add(new ECSTag(tag.substring(0, separator), tag.substring(separator + 1)));
+            }
+        }
+        return result;
+    }
+
     public String getName() {
         return name;
     }
@@ -1,5 +1,6 @@
 package io.jenkins.plugins.huaweicloud;
 
+import antlr.ANTLRException;
 import com.huaweicloud.sdk.core.exception.SdkException;
 import com.huaweicloud.sdk.ecs.v2.EcsClient;
 import com.huaweicloud.sdk.ecs.v2.model.*;
@@ -8,26 +9,42 @@ import hudson.RelativePath;
 import hudson.Util;
 import hudson.model.*;
 import hudson.model.labels.LabelAtom;
+import hudson.scheduler.CronTabList;
 import hudson.security.Permission;
 import hudson.slaves.NodeProperty;
 import hudson.slaves.NodePropertyDescriptor;
 import hudson.util.DescribableList;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
+import io.jenkins.plugins.huaweicloud.util.ApiRateLimiter;
+import io.jenkins.plugins.huaweicloud.util.CreateJobQueue;
 import io.jenkins.plugins.huaweicloud.util.ECSAgentConfig;
 import io.jenkins.plugins.huaweicloud.util.ECSAgentFactory;
+import io.jenkins.plugins.huaweicloud.util.ECSExecutors;
+import io.jenkins.plugins.huaweicloud.util.ECSJobTracker;
+import io.jenkins.plugins.huaweicloud.util.FleetInventory;
+import io.jenkins.plugins.huaweicloud.util.RetryPolicy;
+import io.jenkins.plugins.huaweicloud.util.StripedLocks;
+import io.jenkins.plugins.huaweicloud.util.VPCAsyncHelper;
 import io.jenkins.plugins.huaweicloud.util.VPCHelper;
+import io.jenkins.plugins.huaweicloud.util.WarmPool;
 import jenkins.model.Jenkins;
 import jenkins.slaves.iterators.api.NodeIterator;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.Stapler;
 import org.kohsuke.stapler.interceptor.RequirePOST;
 
+import javax.annotation.CheckForNull;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -57,6 +74,11 @@ public class ECSTemplate implements Describable<ECSTemplate> {
     public int launchTimeout;
     private final boolean associateEIP;
     public static final String srvNamePrefix = "JenkinsHWCSlave_";
+    public static final int FINGERPRINT_LENGTH = 16;
+    //Limit the number of machines created by one job to prevent the failure of
+    //each creation due to insufficient resources of HUAWEI CLOUD
+    public static final int DEFAULT_CREATE_CHUNK_SIZE = 5;
+    public static final int DEFAULT_MAX_CREATE_JOBS = 4;
     private /* lazily initialized */ DescribableList<NodeProperty<?>, NodePropertyDescriptor> nodeProperties;
     private transient/* almost final */ Set<LabelAtom> labelSet;
     private final int minimumNumberOfInstances;
@@ -68,6 +90,12 @@ public class ECSTemplate implements Describable<ECSTemplate> {
     private final String dvSize;
     public VolumeType dvType;
     public String mountQuantity;
+    private int createChunkSize;
+    private int maxCreateJobs;
+    private int warmPoolSize;
+    private int minimumNumberOfSpareInstances;
+    private String minimumInstancesSchedule;
+    private transient CronTabList minimumInstancesWindow;
 
     @DataBoundConstructor
     public ECSTemplate(String description, String imgID, String flavorID,
@@ -177,6 +205,95 @@ public class ECSTemplate implements Describable<ECSTemplate> {
         return minimumNumberOfInstances;
     }
 
+    /**
+     * Number of idle online agents of this template kept ready for new builds, 0 when disabled.
+     */
+    public int getMinimumNumberOfSpareInstances() {
+        return minimumNumberOfSpareInstances;
+    }
+
+    @DataBoundSetter
+    public void setMinimumNumberOfSpareInstances(int minimumNumberOfSpareInstances) {
+        this.minimumNumberOfSpareInstances = Math.max(minimumNumberOfSpareInstances, 0);
+    }
+
+    /**
+     * Cron like schedule, one spec per line, of the minutes during which the minimum number of instances and of spare
+     * instances apply. They always apply when empty.
+     */
+    public String getMinimumInstancesSchedule() {
+        return minimumInstancesSchedule;
+    }
+
+    @DataBoundSetter
+    public void setMinimumInstancesSchedule(String minimumInstancesSchedule) {
+        this.minimumInstancesSchedule = Util.fixEmptyAndTrim(minimumInstancesSchedule);
+        this.minimumInstancesWindow = parseSchedule(this.minimumInstancesSchedule);
+    }
+
+    /**
+     * @return whether the minimum number of instances and of spare instances apply at the given time
+     */
+    public boolean isMinimumInstancesActive(long time) {
+        if (minimumInstancesWindow == null) {
+            return minimumInstancesSchedule == null;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        return minimumInstancesWindow.check(calendar);
+    }
+
+    @CheckForNull
+    private CronTabList parseSchedule(@CheckForNull String schedule) {
+        if (schedule == null) {
+            return null;
+        }
+        try {
+            return CronTabList.create(schedule);
+        } catch (ANTLRException | IllegalArgumentException e) {
+            // an invalid schedule never applies, rather than keeping instances around the clock
+            LOGGER.log(Level.WARNING, this + ". Invalid minimum instances schedule: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Number of instances requested by a single create job, 0 means {@link #DEFAULT_CREATE_CHUNK_SIZE}.
+     */
+    public int getCreateChunkSize() {
+        return createChunkSize;
+    }
+
+    @DataBoundSetter
+    public void setCreateChunkSize(int createChunkSize) {
+        this.createChunkSize = Math.max(createChunkSize, 0);
+    }
+
+    /**
+     * Number of create jobs of this template that may run at the same time, 0 means {@link #DEFAULT_MAX_CREATE_JOBS}.
+     */
+    public int getMaxCreateJobs() {
+        return maxCreateJobs;
+    }
+
+    @DataBoundSetter
+    public void setMaxCreateJobs(int maxCreateJobs) {
+        this.maxCreateJobs = Math.max(maxCreateJobs, 0);
+    }
+
+    /**
+     * Number of bootstrapped instances of this template kept stopped by the {@link WarmPool} of the cloud, 0 when
+     * disabled.
+     */
+    public int getWarmPoolSize() {
+        return warmPoolSize;
+    }
+
+    @DataBoundSetter
+    public void setWarmPoolSize(int warmPoolSize) {
+        this.warmPoolSize = Math.max(warmPoolSize, 0);
+    }
+
     public String getSubnetIDs() {
         return subnetIDs;
     }
@@ -241,6 +358,13 @@ public class ECSTemplate implements Describable<ECSTemplate> {
         return String.format("ECS(%s) - %s", parent.getDisplayName(), description);
     }
 
+    /**
+     * Identifies the instances created from this template, it is part of their name after {@link #srvNamePrefix}.
+     */
+    public String getFingerprint() {
+        return VPCHelper.MD516bitUp(description + flavorID + imgID);
+    }
+
     public Set<LabelAtom> getLabelSet() {
         return labelSet;
     }
@@ -272,22 +396,181 @@ public class ECSTemplate implements Describable<ECSTemplate> {
     }
 
     private List<ECSAbstractSlave> provisionOnDemand(int number, EnumSet<ProvisionOptions> provisionOptions) throws SdkException, IOException {
-        List<ServerDetail> orphans = findOrphansOrStopInstance(tplAllInstance(), number);
-        if (orphans.isEmpty() && !provisionOptions.contains(ProvisionOptions.FORCE_CREATE) &&
-                !provisionOptions.contains(ProvisionOptions.ALLOW_CREATE)) {
-            logProvisionInfo("No existing instance found - but cannot create new instance");
+        List<CompletableFuture<ECSAbstractSlave>> futures = provisionAsync(number, provisionOptions);
+        if (futures == null) {
             return null;
         }
-        wakeUpInstance(orphans);
-        if (orphans.size() == number) {
-            return toSlaves(orphans);
+        List<ECSAbstractSlave> slaves = new ArrayList<>(futures.size());
+        for (CompletableFuture<ECSAbstractSlave> future : futures) {
+            try {
+                slaves.add(future.get());
+            } catch (ExecutionException e) {
+                logProvisionInfo(e.getCause().getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the ECS instances", e);
+            }
+        }
+        return slaves;
+    }
+
+    /**
+     * Reuses the orphan or stopped instances of this template and creates the missing ones, without waiting for the
+     * creation. The futures of the created instances complete one by one as the {@link ECSJobTracker} of the cloud
+     * sees their server ids.
+     *
+     * The orphans are picked under the stripe of this template in {@link VPC#getTemplateLocks()} and claimed on the
+     * {@link io.jenkins.plugins.huaweicloud.util.CapacityLedger} before it is released, so that two requests never
+     * pick the same orphan. Listing, starting and creating instances happen outside of the lock.
+     *
+     * @return one future per instance, or {@code null} when no existing instance is found and creation is not
+     * allowed
+     */
+    @CheckForNull
+    public List<CompletableFuture<ECSAbstractSlave>> provisionAsync(int number, EnumSet<ProvisionOptions> provisionOptions) throws SdkException, IOException {
+        List<ServerDetail> instances = tplAllInstance();
+        List<ServerDetail> orphans;
+        try (StripedLocks.Hold ignored = parent.getTemplateLocks().acquire(getFingerprint())) {
+            orphans = findOrphansOrStopInstance(instances, number);
+            if (orphans.isEmpty() && !provisionOptions.contains(ProvisionOptions.FORCE_CREATE) &&
+                    !provisionOptions.contains(ProvisionOptions.ALLOW_CREATE)) {
+                logProvisionInfo("No existing instance found - but cannot create new instance");
+                return null;
+            }
+            parent.getCapacityLedger().claim(orphans.stream().map(ServerDetail::getId).collect(Collectors.toList()));
         }
+        List<CompletableFuture<ECSAbstractSlave>> slaves = new ArrayList<>(number);
+        slaves.addAll(start(orphans));
         int needCreateCount = number - orphans.size();
-        //create ecs instances by huawei ecs API and get the  create instances job id.
-        String jobID = createNewInstances(needCreateCount);
-        List<ServerDetail> instances = getInstancesByStatus(jobID);
-        instances.addAll(orphans);
-        return toSlaves(instances);
+        if (warmPoolSize > 0) {
+            int warm = (int) orphans.stream().filter(instance -> "SHUTOFF".equals(instance.getStatus())).count();
+            parent.getWarmPool().record(warm, needCreateCount);
+        }
+        if (needCreateCount > 0) {
+            slaves.addAll(createInChunks(needCreateCount));
+        }
+        return slaves;
+    }
+
+    /**
+     * Claims up to {@code number} stopped instances of this template from the inventory of the cloud, to serve the
+     * demand the instance caps leave no room for: they are already counted against the caps, so starting them adds no
+     * instance. The claimed instances are started with {@link #reuse(List)}.
+     */
+    public List<ServerDetail> claimStopped(int number) {
+        List<ServerDetail> stopped = new ArrayList<>();
+        if (number <= 0) {
+            return stopped;
+        }
+        List<ServerDetail> instances = parent.getInventory().current().getByFingerprint(getFingerprint());
+        try (StripedLocks.Hold ignored = parent.getTemplateLocks().acquire(getFingerprint())) {
+            Set<String> attached = attachedInstances();
+            for (ServerDetail instance : instances) {
+                if (stopped.size() == number) {
+                    break;
+                }
+                if ("SHUTOFF".equals(instance.getStatus()) && checkInstance(instance, attached)
+                        && !parent.getCapacityLedger().isClaimed(instance.getId())) {
+                    stopped.add(instance);
+                }
+            }
+            parent.getCapacityLedger().claim(stopped.stream().map(ServerDetail::getId).collect(Collectors.toList()));
+        }
+        return stopped;
+    }
+
+    /**
+     * Starts the stopped instances claimed by {@link #claimStopped(int)}.
+     *
+     * @return one completed future per instance
+     */
+    public List<CompletableFuture<ECSAbstractSlave>> reuse(List<ServerDetail> stopped) throws IOException {
+        if (warmPoolSize > 0 && !stopped.isEmpty()) {
+            parent.getWarmPool().record(stopped.size(), 0);
+        }
+        return start(stopped);
+    }
+
+    private List<CompletableFuture<ECSAbstractSlave>> start(List<ServerDetail> orphans) throws IOException {
+        wakeUpInstance(orphans);
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<ECSAbstractSlave>> slaves = new ArrayList<>(orphans.size());
+        List<ECSAbstractSlave> reused = toSlaves(orphans);
+        for (int i = 0; i < reused.size(); i++) {
+            reused.get(i).provisioned(start, "SHUTOFF".equals(orphans.get(i).getStatus()));
+            slaves.add(CompletableFuture.completedFuture(reused.get(i)));
+        }
+        return slaves;
+    }
+
+    /**
+     * Creates new instances without reusing the existing ones of this template.
+     */
+    public List<CompletableFuture<ECSAbstractSlave>> createAsync(int number) {
+        try (StripedLocks.Hold ignored = parent.getTemplateLocks().acquire(getFingerprint())) {
+            return createInChunks(number);
+        }
+    }
+
+    /**
+     * Creates the instances with create jobs of at most {@link #getCreateChunkSize()} instances, queued on the
+     * {@link CreateJobQueue} of the cloud so that at most {@link #getMaxCreateJobs()} jobs of this template run at the
+     * same time, whatever the number of bursts. A job is done once it has reported all its servers or its submission
+     * failed, the chunks behind it are then submitted.
+     */
+    private List<CompletableFuture<ECSAbstractSlave>> createInChunks(int count) {
+        int chunkSize = createChunkSize > 0 ? createChunkSize : DEFAULT_CREATE_CHUNK_SIZE;
+        int maxJobs = maxCreateJobs > 0 ? maxCreateJobs : DEFAULT_MAX_CREATE_JOBS;
+        List<CompletableFuture<ECSAbstractSlave>> slaves = new ArrayList<>(count);
+        List<Consumer<Runnable>> jobs = new ArrayList<>();
+        for (int created = 0; created < count; created += chunkSize) {
+            List<CompletableFuture<ECSAbstractSlave>> chunk = new ArrayList<>();
+            for (int i = created; i < Math.min(count, created + chunkSize); i++) {
+                chunk.add(new CompletableFuture<>());
+            }
+            slaves.addAll(chunk);
+            jobs.add(done -> createChunk(chunk, done));
+        }
+        long start = System.currentTimeMillis();
+        CompletableFuture.allOf(slaves.toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+            long failed = slaves.stream().filter(CompletableFuture::isCompletedExceptionally).count();
+            parent.getStatistics().recordTime("provision.burst", System.currentTimeMillis() - start);
+            logProvisionInfo(String.format("Created %d of %d instances in %d chunks, %d ms",
+                    count - failed, count, jobs.size(), System.currentTimeMillis() - start));
+        });
+        parent.getCreateJobQueue().submit(getFingerprint(), maxJobs, jobs);
+        return slaves;
+    }
+
+    private void createChunk(List<CompletableFuture<ECSAbstractSlave>> chunk, Runnable done) {
+        //create ecs instances by huawei ecs API and follow the job until the servers are known.
+        CreatePostPaidServersRequest request = buildCreateRequest(chunk.size());
+        long start = System.currentTimeMillis();
+        RetryPolicy.SUBMIT.callAsync(() -> VPCAsyncHelper.createServers(parent, request),
+                parent.getCircuitBreaker(getZone())).whenComplete((jobID, e) -> {
+            if (e != null) {
+                LOGGER.log(Level.WARNING, this + ". Failed to submit a create job for " + chunk.size() + " instances", e);
+                parent.getStatistics().increment("provision.chunks.failed");
+                for (CompletableFuture<ECSAbstractSlave> slave : chunk) {
+                    slave.completeExceptionally(e);
+                }
+                done.run();
+                return;
+            }
+            List<CompletableFuture<String>> serverIds = parent.getJobTracker().track(jobID, chunk.size());
+            parent.getStatistics().increment("provision.chunks");
+            for (int i = 0; i < chunk.size(); i++) {
+                CompletableFuture<ECSAbstractSlave> slave = chunk.get(i);
+                serverIds.get(i).thenApplyAsync(id -> toCreatedSlave(id, start), ECSExecutors.provisioning()).whenComplete((s, error) -> {
+                    if (error != null) {
+                        slave.completeExceptionally(error);
+                    } else {
+                        slave.complete(s);
+                    }
+                });
+            }
+            CompletableFuture.allOf(serverIds.toArray(new CompletableFuture[0])).whenComplete((v, error) -> done.run());
+        });
     }
 
     private void wakeUpInstance(List<ServerDetail> orphans) {
@@ -306,60 +589,27 @@ public class ECSTemplate implements Describable<ECSTemplate> {
         }
     }
 
-
-    private List<ServerDetail> getInstancesByStatus(String jobID) throws SdkException {
-        List<String> serverIds = new ArrayList<>();
-        EcsClient ecsClient = parent.getEcsClient();
-        ShowJobRequest request = new ShowJobRequest();
-        request.withJobId(jobID);
-        while (true) {
-            ShowJobResponse response = ecsClient.showJob(request);
-            ShowJobResponse.StatusEnum status = response.getStatus();
-            for (SubJob sj : response.getEntities().getSubJobs()) {
-                serverIds.add(sj.getEntities().getServerId());
-            }
-            if (status == ShowJobResponse.StatusEnum.INIT || status == ShowJobResponse.StatusEnum.RUNNING) {
-                if (serverIds.size() > 0) {
-                    break;
-                }
-                try {
-                    Thread.sleep(4000);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            } else {
-                break;
-            }
-        }
-
-        List<ServerDetail> instances = new ArrayList<>();
-        if (serverIds.size() == 0) {
-            return instances;
-        }
-        for (String srvId : serverIds) {
-            try {
-                ServerDetail sd = getServerDetail(srvId);
-                instances.add(sd);
-            } catch (SdkException e) {
-                logProvisionInfo(e.getMessage());
-            }
+    private ECSAbstractSlave toCreatedSlave(String serverId, long requested) {
+        try {
+            ServerDetail instance = getServerDetail(serverId);
+            parent.getInventory().update(Collections.singletonList(instance));
+            ECSAbstractSlave slave = toSlaves(Collections.singletonList(instance)).get(0);
+            slave.provisioned(requested, false);
+            return slave;
+        } catch (IOException e) {
+            throw new CompletionException(e);
         }
-        return instances;
     }
 
     private ServerDetail getServerDetail(String srvId) throws SdkException {
         ShowServerRequest request = new ShowServerRequest().withServerId(srvId);
         EcsClient ecsClient = parent.getEcsClient();
-        ShowServerResponse response = ecsClient.showServer(request);
+        // part of the creation of the instance, so it is not delayed behind the other describe calls
+        ShowServerResponse response = parent.getRateLimiter().call(ApiRateLimiter.Family.CREATE, () -> ecsClient.showServer(request));
         return response.getServer();
     }
 
-    private String createNewInstances(int needCreateCount) throws SdkException {
-        //Limit the number of machines created each time prevent the failure of
-        //each creation due to insufficient resources of HUAWEI CLOUD
-        if (needCreateCount > 5) {
-            needCreateCount = 5;
-        }
+    private CreatePostPaidServersRequest buildCreateRequest(int needCreateCount) {
         PostPaidServer serverBody = genPostPaidServer(needCreateCount, getZone(), getFlavorID(),
                 getImgID(), parent.getVpcID(), description);
         //setting data volume
@@ -375,6 +625,7 @@ public class ECSTemplate implements Describable<ECSTemplate> {
         serverBody.withRootVolume(rootVolumeServer);
         //setting server tags
         List<PostPaidServerTag> postPaidServerTags = genTagsData(getTags());
+        postPaidServerTags.add(new PostPaidServerTag().withKey(ECSTag.TAG_NAME_JENKINS_TEMPLATE).withValue(getFingerprint()));
         serverBody.withServerTags(postPaidServerTags);
 
         //setting server public ip
@@ -402,10 +653,7 @@ public class ECSTemplate implements Describable<ECSTemplate> {
         body.withDryRun(false).withServer(serverBody);
         CreatePostPaidServersRequest request = new CreatePostPaidServersRequest();
         request.withBody(body);
-
-        EcsClient ecsClient = parent.getEcsClient();
-        CreatePostPaidServersResponse response = ecsClient.createPostPaidServers(request);
-        return response.getJobId();
+        return request;
     }
 
     private List<ServerDetail> findOrphansOrStopInstance(List<ServerDetail> tplAllInstance, int number) {
@@ -414,9 +662,13 @@ public class ECSTemplate implements Describable<ECSTemplate> {
             return orphans;
         }
         int count = 0;
-        for (ServerDetail instance : tplAllInstance) {
-            if (checkInstance(instance)) {
-                // instance is not connected to jenkins
+        // running orphans are ready the soonest, the stopped ones of the warm pool come next
+        List<ServerDetail> candidates = new ArrayList<>(tplAllInstance);
+        candidates.sort(Comparator.comparing(instance -> "SHUTOFF".equals(instance.getStatus())));
+        Set<String> attached = attachedInstances();
+        for (ServerDetail instance : candidates) {
+            if (checkInstance(instance, attached) && !parent.getCapacityLedger().isClaimed(instance.getId())) {
+                // instance is not connected to jenkins nor picked by another request
                 orphans.add(instance);
                 count++;
             }
@@ -427,13 +679,22 @@ public class ECSTemplate implements Describable<ECSTemplate> {
         return orphans;
     }
 
-    private boolean checkInstance(ServerDetail instance) {
+    /**
+     * @return whether the instance was created from this template and is free to be picked: no agent runs on it, or
+     * it is stopped
+     */
+    private boolean checkInstance(ServerDetail instance, Set<String> attached) {
+        return parent.getTemplate(instance) == this
+                && ("SHUTOFF".equals(instance.getStatus()) || !attached.contains(instance.getId()));
+    }
+
+    /* the instances of the agents, collected once rather than scanning the nodes for every candidate */
+    private static Set<String> attachedInstances() {
+        Set<String> attached = new HashSet<>();
         for (ECSAbstractSlave node : NodeIterator.nodes(ECSAbstractSlave.class)) {
-            if (node.getInstanceId().equals(instance.getId()) && !"SHUTOFF".equals(instance.getStatus())) {
-                return false;
-            }
+            attached.add(node.getInstanceId());
         }
-        return true;
+        return attached;
     }
 
     private List<ECSAbstractSlave> toSlaves(List<ServerDetail> instances) throws IOException {
@@ -474,7 +735,7 @@ public class ECSTemplate implements Describable<ECSTemplate> {
                 .withTmpDir(tmpDir)
                 .withRemoteAdmin(remoteAdmin)
                 .withIdleTerminationMinutes(idleTerminationMinutes)
-                .withTags(ECSTag.formInstanceTags(VPCHelper.getServerTags(instance.getId(), parent)))
+                .withTags(ECSTag.formServerDetailTags(instance.getTags()))
                 .withCloudName(parent.name)
                 .withLaunchTimeout(getLaunchTimeout())
                 .withNodeProperties(nodeProperties.toList())
@@ -484,8 +745,29 @@ public class ECSTemplate implements Describable<ECSTemplate> {
     }
 
 
-    private List<ServerDetail> tplAllInstance() {
-        return VPCHelper.getAllOfServerByTmp(this);
+    /**
+     * Returns the instances of this template from the inventory when it is fresh enough, otherwise asks ECS for the
+     * instances carrying the fingerprint tag of this template, and for the instances named after it which were created
+     * before the tag existed, instead of listing the whole account.
+     */
+    List<ServerDetail> tplAllInstance() {
+        FleetInventory.Snapshot snapshot = parent.getInventory().current();
+        if (snapshot.getTimestamp() != 0 && snapshot.getAge() <= FleetInventory.PROVISION_MAX_AGE) {
+            return snapshot.getByFingerprint(getFingerprint());
+        }
+        List<ServerDetail> instances = new ArrayList<>(VPCHelper.getServerListByTag(parent, ECSTag.TAG_NAME_JENKINS_TEMPLATE, getFingerprint()));
+        Set<String> ids = new HashSet<>();
+        for (ServerDetail instance : instances) {
+            ids.add(instance.getId());
+        }
+        // the name filter of ECS is a fuzzy match, keep the instances of this very template
+        for (ServerDetail instance : VPCHelper.getServerListByName(parent, VPCHelper.genSlaveNamePrefix(description, flavorID, imgID))) {
+            if (getFingerprint().equals(FleetInventory.fingerprintOf(instance)) && ids.add(instance.getId())) {
+                instances.add(instance);
+            }
+        }
+        parent.getInventory().update(instances);
+        return instances;
     }
 
     public int getNumExecutors() {
@@ -502,6 +784,7 @@ public class ECSTemplate implements Describable<ECSTemplate> {
         Jenkins.get().checkPermission(Jenkins.ADMINISTER);
 
         labelSet = Label.parse(labels);
+        minimumInstancesWindow = parseSchedule(minimumInstancesSchedule);
 
         if (nodeProperties == null) {
             nodeProperties = new DescribableList<>(Saveable.NOOP);
@@ -691,6 +974,46 @@ public class ECSTemplate implements Describable<ECSTemplate> {
             return FormValidation.error("Minimum number of instances must be a non-negative integer (or null)");
         }
 
+        public FormValidation doCheckMinimumNumberOfSpareInstances(@QueryParameter String value) {
+            return checkNonNegative(value, "Minimum number of spare instances must be a non-negative integer (or empty to disable it)");
+        }
+
+        public FormValidation doCheckMinimumInstancesSchedule(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) == null)
+                return FormValidation.ok();
+            try {
+                String warning = CronTabList.create(value).checkSanity();
+                return warning == null ? FormValidation.ok() : FormValidation.warning(warning);
+            } catch (ANTLRException | IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        public FormValidation doCheckCreateChunkSize(@QueryParameter String value) {
+            return checkNonNegative(value, "Create chunk size must be a non-negative integer (or empty for the default)");
+        }
+
+        public FormValidation doCheckMaxCreateJobs(@QueryParameter String value) {
+            return checkNonNegative(value, "Maximum create jobs must be a non-negative integer (or empty for the default)");
+        }
+
+        public FormValidation doCheckWarmPoolSize(@QueryParameter String value) {
+            return checkNonNegative(value, "Warm pool size must be a non-negative integer (or empty to disable it)");
+        }
+
+        private static FormValidation checkNonNegative(String value, String message) {
+            if (Util.fixEmptyAndTrim(value) == null)
+                return FormValidation.ok();
+            try {
+                if (Integer.parseInt(value.trim()) >= 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.INFO, e.getMessage());
+            }
+            return FormValidation.error(message);
+        }
+
         public FormValidation doCheckImgID(@QueryParameter String imgID) {
             Jenkins.get().hasPermission(Jenkins.ADMINISTER);
             if (Util.fixEmptyAndTrim(imgID) == null) {
@@ -25,6 +25,7 @@ public class HuaweiVPC extends VPC {
 
     public static final String CLOUD_ID_PREFIX = "ecs-";
     private boolean noDelayProvisioning;
+    private boolean predictiveProvisioning;
 
     @DataBoundConstructor
     public HuaweiVPC(String cloudName, String credentialsId, String sshKeysCredentialsId, String instanceCapStr,
@@ -41,6 +42,15 @@ public class HuaweiVPC extends VPC {
         this.noDelayProvisioning = noDelayProvisioning;
     }
 
+    public boolean isPredictiveProvisioning() {
+        return predictiveProvisioning;
+    }
+
+    @DataBoundSetter
+    public void setPredictiveProvisioning(boolean predictiveProvisioning) {
+        this.predictiveProvisioning = predictiveProvisioning;
+    }
+
     @Override
     public URL getEc2EndpointUrl() throws IOException {
         return null;
@@ -7,7 +7,10 @@ import hudson.slaves.Cloud;
 import hudson.slaves.NodeProvisioner;
 import jenkins.model.Jenkins;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -37,20 +40,23 @@ public class NoDelayProvisionerStrategy extends NodeProvisioner.Strategy {
         LOGGER.log(Level.FINE, "Available capacity={0}, currentDemand={1}",
                 new Object[]{availableCapacity, currentDemand});
         if (availableCapacity < currentDemand) {
-            Jenkins jenkinsInstance = Jenkins.get();
-            for (Cloud cloud : jenkinsInstance.clouds) {
+            List<HuaweiVPC> clouds = new ArrayList<>();
+            for (Cloud cloud : Jenkins.get().clouds) {
                 if (!(cloud instanceof HuaweiVPC)) continue;
                 if (!cloud.canProvision(label)) continue;
                 HuaweiVPC hwc = (HuaweiVPC) cloud;
                 if (!hwc.isNoDelayProvisioning()) continue;
-
-                Collection<NodeProvisioner.PlannedNode> plannedNodes = cloud.provision(label, currentDemand - availableCapacity);
-                LOGGER.log(Level.FINE, "Planned {0} new nodes", plannedNodes.size());
+                clouds.add(hwc);
+            }
+            int[] shares = spread(clouds, label, currentDemand - availableCapacity);
+            for (int i = 0; i < clouds.size(); i++) {
+                if (shares[i] <= 0) continue;
+                Collection<NodeProvisioner.PlannedNode> plannedNodes = clouds.get(i).provision(label, shares[i]);
+                LOGGER.log(Level.FINE, "Planned {0} new nodes on {1}", new Object[]{plannedNodes.size(), clouds.get(i).name});
                 strategyState.recordPendingLaunches(plannedNodes);
                 availableCapacity += plannedNodes.size();
-                LOGGER.log(Level.FINE, "After provisioning, available capacity={0}, currentDemand={1}", new Object[]{availableCapacity, currentDemand});
-                break;
             }
+            LOGGER.log(Level.FINE, "After provisioning, available capacity={0}, currentDemand={1}", new Object[]{availableCapacity, currentDemand});
         }
         if (availableCapacity >= currentDemand) {
             LOGGER.log(Level.FINE, "Provisioning completed");
@@ -61,4 +67,57 @@ public class NoDelayProvisionerStrategy extends NodeProvisioner.Strategy {
         }
     }
 
-}
\ No newline at end of file
+    /**
+     * Splits the excess workload across the clouds in proportion to the executors each of them can still add, slowed
+     * down by its recent provisioning latency and failure rate, so that a large burst is served by several clouds in
+     * parallel. The part a cloud cannot take within its caps goes to the others. A single cloud gets all of it, even
+     * when it seems full, so that it logs why it cannot provision.
+     */
+    static int[] spread(List<HuaweiVPC> clouds, Label label, int excessWorkload) {
+        if (clouds.size() == 1) {
+            return new int[]{excessWorkload};
+        }
+        int[] room = new int[clouds.size()];
+        double[] weights = new double[clouds.size()];
+        for (int i = 0; i < clouds.size(); i++) {
+            HuaweiVPC cloud = clouds.get(i);
+            room[i] = cloud.getRemainingExecutors(label);
+            weights[i] = cloud.getHealth().weight(Math.min(room[i], excessWorkload));
+        }
+        int[] shares = spread(room, weights, excessWorkload);
+        LOGGER.log(Level.FINE, "Spread {0} excess workload as {1}", new Object[]{excessWorkload, Arrays.toString(shares)});
+        return shares;
+    }
+
+    /**
+     * Splits the excess workload in proportion to the weights, within the room of each cloud. The units left by the
+     * rounding go to the heaviest cloud with room, and what no cloud has room for is not assigned.
+     */
+    static int[] spread(int[] room, double[] weights, int excessWorkload) {
+        int[] shares = new int[room.length];
+        int left = excessWorkload;
+        while (left > 0) {
+            double total = 0;
+            for (int i = 0; i < room.length; i++) {
+                if (shares[i] < room[i]) total += weights[i];
+            }
+            if (total <= 0) break;
+            int assigned = 0;
+            int best = -1;
+            for (int i = 0; i < room.length; i++) {
+                if (shares[i] >= room[i] || weights[i] <= 0) continue;
+                int share = Math.min((int) (left * weights[i] / total), room[i] - shares[i]);
+                shares[i] += share;
+                assigned += share;
+                if (best < 0 || weights[i] > weights[best]) best = i;
+            }
+            if (assigned == 0) {
+                // the rounding left less than one unit per cloud, give it to the healthiest one
+                shares[best]++;
+                assigned = 1;
+            }
+            left -= assigned;
+        }
+        return shares;
+    }
+}
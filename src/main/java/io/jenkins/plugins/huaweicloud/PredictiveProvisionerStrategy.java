@@ -0,0 +1,106 @@
+package io.jenkins.plugins.huaweicloud;
+
+import hudson.Extension;
+import hudson.model.Label;
+import hudson.model.LoadStatistics;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import io.jenkins.plugins.huaweicloud.util.DemandForecaster;
+import jenkins.model.Jenkins;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of {@link NodeProvisioner.Strategy} which provisions the nodes a label is forecast to need
+ * {@link DemandForecaster#HORIZON} ahead, on the clouds with predictive provisioning enabled, so that the agents boot
+ * before the builds arrive. The demand of a label is recorded in one history per template that serves it.
+ * <p>
+ * It runs before {@link NoDelayProvisionerStrategy} and always leaves the current demand to the remaining strategies,
+ * which see the nodes planned here as additional planned capacity. The nodes it plans are subject to the instance caps
+ * like any other, and idle agents are kept while the target of their template still needs them.
+ */
+@Extension(ordinal = 110)
+public class PredictiveProvisionerStrategy extends NodeProvisioner.Strategy {
+
+    private static final Logger LOGGER = Logger.getLogger(PredictiveProvisionerStrategy.class.getName());
+
+    @Override
+    public NodeProvisioner.StrategyDecision apply(NodeProvisioner.StrategyState strategyState) {
+        final Label label = strategyState.getLabel();
+        List<HuaweiVPC> clouds = new ArrayList<>();
+        for (Cloud cloud : Jenkins.get().clouds) {
+            if (cloud instanceof HuaweiVPC && ((HuaweiVPC) cloud).isPredictiveProvisioning() && cloud.canProvision(label)) {
+                clouds.add((HuaweiVPC) cloud);
+            }
+        }
+        if (clouds.isEmpty()) {
+            return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+        }
+
+        LoadStatistics.LoadStatisticsSnapshot snapshot = strategyState.getSnapshot();
+        int demand = snapshot.getBusyExecutors() + snapshot.getQueueLength();
+        int capacity =
+                  snapshot.getBusyExecutors()
+                + snapshot.getAvailableExecutors()
+                + snapshot.getConnectingExecutors()
+                + strategyState.getPlannedCapacitySnapshot()
+                + strategyState.getAdditionalPlannedCapacity();
+        Collection<NodeProvisioner.PlannedNode> plannedNodes = plan(clouds, label, System.currentTimeMillis(), demand, capacity);
+        if (!plannedNodes.isEmpty()) {
+            strategyState.recordPendingLaunches(plannedNodes);
+        }
+        return NodeProvisioner.StrategyDecision.CONSULT_REMAINING_STRATEGIES;
+    }
+
+    /**
+     * Records the demand of the label in the history of every template of the clouds that can provision it, and plans
+     * the executors the highest of their targets is missing, on each cloud in turn until the caps leave no room.
+     *
+     * @return the nodes planned ahead of the forecast demand
+     */
+    static Collection<NodeProvisioner.PlannedNode> plan(List<HuaweiVPC> clouds, Label label, long now, int demand, int capacity) {
+        int target = 0;
+        for (HuaweiVPC hwc : clouds) {
+            for (ECSTemplate t : hwc.getTemplates(label)) {
+                String key = key(t, label);
+                int templateTarget = hwc.getForecaster().observe(key, now, demand);
+                LOGGER.log(Level.FINE, "{0}: demand={1}, capacity={2}, target={3}",
+                        new Object[]{key, demand, capacity, templateTarget});
+                target = Math.max(target, templateTarget);
+            }
+        }
+        List<NodeProvisioner.PlannedNode> plannedNodes = new ArrayList<>();
+        for (HuaweiVPC hwc : clouds) {
+            if (target <= capacity) {
+                break;
+            }
+            Collection<NodeProvisioner.PlannedNode> cloudNodes = hwc.provision(label, target - capacity);
+            for (NodeProvisioner.PlannedNode node : cloudNodes) {
+                capacity += node.numExecutors;
+            }
+            plannedNodes.addAll(cloudNodes);
+            LOGGER.log(Level.FINE, "Planned {0} new nodes on {1} ahead of the forecast demand",
+                    new Object[]{cloudNodes.size(), hwc.getDisplayName()});
+            hwc.getStatistics().add("forecast.planned", cloudNodes.size());
+        }
+        return plannedNodes;
+    }
+
+    /**
+     * @return the key of the demand history of the label on the template
+     */
+    static String key(ECSTemplate t, Label label) {
+        return prefix(t) + (label == null ? "" : label.getExpression());
+    }
+
+    /**
+     * @return the prefix of the keys of the demand histories of the template
+     */
+    static String prefix(ECSTemplate t) {
+        return t.description + "@";
+    }
+}
@@ -9,6 +9,7 @@ import com.huaweicloud.sdk.core.auth.BasicCredentials;
 import com.huaweicloud.sdk.core.auth.GlobalCredentials;
 import com.huaweicloud.sdk.core.auth.ICredential;
 import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.ecs.v2.EcsAsyncClient;
 import com.huaweicloud.sdk.ecs.v2.EcsClient;
 import com.huaweicloud.sdk.ecs.v2.model.*;
 import com.huaweicloud.sdk.ecs.v2.region.EcsRegion;
@@ -27,8 +28,27 @@ import hudson.util.ListBoxModel;
 import hudson.util.StreamTaskListener;
 import io.jenkins.plugins.huaweicloud.credentials.AccessKeyCredentials;
 import io.jenkins.plugins.huaweicloud.credentials.HWCAccessKeyCredentials;
+import io.jenkins.plugins.huaweicloud.util.ApiRateLimiter;
+import io.jenkins.plugins.huaweicloud.util.CapacityLedger;
+import io.jenkins.plugins.huaweicloud.util.CircuitBreaker;
+import io.jenkins.plugins.huaweicloud.util.CloudRuntime;
+import io.jenkins.plugins.huaweicloud.util.CloudStatistics;
+import io.jenkins.plugins.huaweicloud.util.CreateJobQueue;
+import io.jenkins.plugins.huaweicloud.util.DemandForecaster;
+import io.jenkins.plugins.huaweicloud.util.ECSClientRegistry;
+import io.jenkins.plugins.huaweicloud.util.ECSJobTracker;
+import io.jenkins.plugins.huaweicloud.util.FleetInventory;
+import io.jenkins.plugins.huaweicloud.util.InstanceActionQueue;
+import io.jenkins.plugins.huaweicloud.util.InstanceStatePoller;
+import io.jenkins.plugins.huaweicloud.util.InstanceStatusLookup;
+import io.jenkins.plugins.huaweicloud.util.LaunchScheduler;
+import io.jenkins.plugins.huaweicloud.util.ProvisioningCoalescer;
+import io.jenkins.plugins.huaweicloud.util.ProvisioningHealth;
+import io.jenkins.plugins.huaweicloud.util.StripedLocks;
+import io.jenkins.plugins.huaweicloud.util.TemplateIndex;
 import io.jenkins.plugins.huaweicloud.util.TimeUtils;
 import io.jenkins.plugins.huaweicloud.util.VPCHelper;
+import io.jenkins.plugins.huaweicloud.util.WarmPool;
 import jenkins.model.Jenkins;
 import org.apache.commons.lang.StringUtils;
 import org.kohsuke.stapler.*;
@@ -39,9 +59,9 @@ import javax.servlet.ServletException;
 import java.io.*;
 import java.net.URL;
 import java.util.*;
-import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -60,7 +80,27 @@ public abstract class VPC extends Cloud {
     private static final SimpleFormatter sf = new SimpleFormatter();
     private final List<? extends ECSTemplate> templates;
     private transient NovaKeypair usableKeyPair;
-    private transient ReentrantLock slaveCountingLock = new ReentrantLock();
+    private transient CloudStatistics statistics;
+    private transient CapacityLedger capacityLedger;
+    private transient StripedLocks templateLocks;
+    private transient ECSClientRegistry clientRegistry;
+    private transient FleetInventory inventory;
+    private transient ECSJobTracker jobTracker;
+    private transient CreateJobQueue createJobQueue;
+    private transient InstanceStatePoller statePoller;
+    private transient ProvisioningCoalescer coalescer;
+    private transient InstanceActionQueue actionQueue;
+    private transient InstanceStatusLookup statusLookup;
+    private transient ApiRateLimiter rateLimiter;
+    private transient ConcurrentMap<String, CircuitBreaker> circuitBreakers;
+    private transient LaunchScheduler launchScheduler;
+    private transient WarmPool warmPool;
+    private transient DemandForecaster forecaster;
+    private transient ProvisioningHealth health;
+    private transient TemplateIndex templateIndex;
+    private String stateId;
+    private int provisioningWindow;
+    private int maxConcurrentLaunches;
 
     protected VPC(String id, @CheckForNull String credentialsId, @CheckForNull String sshKeysCredentialsId, String instanceCapStr,
                   String vpcID, List<? extends ECSTemplate> templates) {
@@ -97,13 +137,79 @@ public abstract class VPC extends Cloud {
         this.region = region;
     }
 
+    /**
+     * Milliseconds during which the provisioning requests of a template are merged into one, 0 when disabled.
+     */
+    public int getProvisioningWindow() {
+        return provisioningWindow;
+    }
+
+    @DataBoundSetter
+    public void setProvisioningWindow(int provisioningWindow) {
+        this.provisioningWindow = Math.min(Math.max(provisioningWindow, 0), ProvisioningCoalescer.MAX_WINDOW);
+    }
+
+    /**
+     * Number of agents of this cloud bootstrapped over SSH at the same time, 0 for {@link LaunchScheduler#DEFAULT_CONCURRENT}.
+     */
+    public int getMaxConcurrentLaunches() {
+        return maxConcurrentLaunches;
+    }
+
+    @DataBoundSetter
+    public void setMaxConcurrentLaunches(int maxConcurrentLaunches) {
+        this.maxConcurrentLaunches = Math.max(maxConcurrentLaunches, 0);
+    }
+
     protected Object readResolve() {
-        this.slaveCountingLock = new ReentrantLock();
+        if (stateId == null) {
+            stateId = UUID.randomUUID().toString();
+        }
+        attach(CloudRuntime.acquire(stateId, this));
         for (ECSTemplate t : templates)
             t.parent = this;
+        this.templateIndex = new TemplateIndex(templates);
         return this;
     }
 
+    /**
+     * Identifies the {@link CloudRuntime} of this cloud across configuration saves and renames.
+     */
+    public String getStateId() {
+        return stateId;
+    }
+
+    /**
+     * Takes over the runtime of the cloud this configuration replaces, when the form carries its state id.
+     */
+    @DataBoundSetter
+    public void setStateId(String stateId) {
+        if (Util.fixEmptyAndTrim(stateId) != null && !stateId.equals(this.stateId)) {
+            this.stateId = stateId;
+            attach(CloudRuntime.acquire(stateId, this));
+        }
+    }
+
+    private void attach(CloudRuntime runtime) {
+        this.statistics = runtime.getStatistics();
+        this.capacityLedger = runtime.getCapacityLedger();
+        this.templateLocks = runtime.getTemplateLocks();
+        this.clientRegistry = runtime.getClientRegistry();
+        this.rateLimiter = runtime.getRateLimiter();
+        this.circuitBreakers = runtime.getCircuitBreakers();
+        this.inventory = runtime.getInventory();
+        this.jobTracker = runtime.getJobTracker();
+        this.createJobQueue = runtime.getCreateJobQueue();
+        this.statePoller = runtime.getStatePoller();
+        this.coalescer = runtime.getCoalescer();
+        this.actionQueue = runtime.getActionQueue();
+        this.statusLookup = runtime.getStatusLookup();
+        this.launchScheduler = runtime.getLaunchScheduler();
+        this.warmPool = runtime.getWarmPool();
+        this.health = runtime.getHealth();
+        this.forecaster = runtime.getForecaster();
+    }
+
     @CheckForNull
     public String getSshKeysCredentialsId() {
         return sshKeysCredentialsId;
@@ -127,31 +233,32 @@ public abstract class VPC extends Cloud {
 
     @CheckForNull
     public ECSTemplate getTemplate(String template) {
-        for (ECSTemplate t : templates) {
-            if (t.description.equals(template)) {
-                return t;
-            }
-        }
-        return null;
+        return templateIndex.getByDescription(template);
+    }
+
+    /**
+     * Gets the {@link ECSTemplate} an instance of this cloud was created from.
+     */
+    @CheckForNull
+    public ECSTemplate getTemplate(ServerDetail instance) {
+        return templateIndex.getByInstance(instance);
+    }
+
+    /**
+     * Gets the {@link ECSTemplate} of an agent of this cloud: the one its instance was created from when the instance
+     * is known, which tells apart templates sharing a description, otherwise the one named by the agent.
+     */
+    @CheckForNull
+    public ECSTemplate getTemplate(ECSAbstractSlave node, @CheckForNull ServerDetail instance) {
+        ECSTemplate t = instance == null ? null : getTemplate(instance);
+        return t != null ? t : getTemplate(node.templateDescription);
     }
 
     /**
      * Gets list of {@link ECSTemplate} that matches {@link Label}.
      */
     public Collection<ECSTemplate> getTemplates(Label label) {
-        List<ECSTemplate> matchingTemplates = new ArrayList<>();
-        for (ECSTemplate t : templates) {
-            if (t.getMode() == Node.Mode.NORMAL) {
-                if (label == null || label.matches(t.getLabelSet())) {
-                    matchingTemplates.add(t);
-                }
-            } else if (t.getMode() == Node.Mode.EXCLUSIVE) {
-                if (label != null && label.matches(t.getLabelSet())) {
-                    matchingTemplates.add(t);
-                }
-            }
-        }
-        return matchingTemplates;
+        return templateIndex.getByLabel(label);
     }
 
     public int getInstanceCap() {
@@ -159,11 +266,117 @@ public abstract class VPC extends Cloud {
     }
 
     public EcsClient getEcsClient() {
-        return createEcsClient(this.region, this.credentialsId);
+        return clientRegistry.getEcsClient(this.region, this.credentialsId);
+    }
+
+    public EcsAsyncClient getEcsAsyncClient() {
+        return clientRegistry.getEcsAsyncClient(this.region, this.credentialsId);
     }
 
     public EipClient getEipClient() {
-        return createEipClient(this.region, this.credentialsId);
+        return clientRegistry.getEipClient(this.region, this.credentialsId);
+    }
+
+    public IamClient getIamClient() {
+        return clientRegistry.getIamClient(this.region, this.credentialsId);
+    }
+
+    public ECSClientRegistry getClientRegistry() {
+        return clientRegistry;
+    }
+
+    /**
+     * Limits the rate of the ECS calls made for this cloud.
+     */
+    public ApiRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the circuit breaker of the region of this cloud, or of one of its availability zones.
+     */
+    public CircuitBreaker getCircuitBreaker(@CheckForNull String zone) {
+        String key = Util.fixEmpty(zone) == null ? Util.fixNull(region) : region + "/" + zone;
+        return circuitBreakers.computeIfAbsent(key, CircuitBreaker::new);
+    }
+
+    /**
+     * Circuit breakers used so far, sorted by region and zone, shown on the cloud page.
+     */
+    public List<CircuitBreaker> getCircuitBreakers() {
+        List<CircuitBreaker> breakers = new ArrayList<>(circuitBreakers.values());
+        breakers.sort(Comparator.comparing(CircuitBreaker::getKey));
+        return breakers;
+    }
+
+    /**
+     * Shared view of the instances of this cloud, see {@link FleetInventory} for the staleness contract.
+     */
+    public FleetInventory getInventory() {
+        return inventory;
+    }
+
+    public ECSJobTracker getJobTracker() {
+        return jobTracker;
+    }
+
+    public CreateJobQueue getCreateJobQueue() {
+        return createJobQueue;
+    }
+
+    public InstanceStatePoller getStatePoller() {
+        return statePoller;
+    }
+
+    /**
+     * Runtime counters of this cloud, shown on the cloud page.
+     */
+    public CloudStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Instances of this cloud counted against the instance caps, and the reservations of the provisioning still running.
+     */
+    public CapacityLedger getCapacityLedger() {
+        return capacityLedger;
+    }
+
+    /**
+     * Shared, batched lookups of single instances.
+     */
+    public InstanceStatusLookup getStatusLookup() {
+        return statusLookup;
+    }
+
+    public LaunchScheduler getLaunchScheduler() {
+        return launchScheduler;
+    }
+
+    public WarmPool getWarmPool() {
+        return warmPool;
+    }
+
+    public ProvisioningHealth getHealth() {
+        return health;
+    }
+
+    public DemandForecaster getForecaster() {
+        return forecaster;
+    }
+
+    /**
+     * Queue batching the deletion and stop of the instances of this cloud.
+     */
+    public InstanceActionQueue getActionQueue() {
+        return actionQueue;
+    }
+
+    /**
+     * Locks serializing the orphan search and instance creation of a template, keyed by template fingerprint.
+     */
+    public StripedLocks getTemplateLocks() {
+        return templateLocks;
     }
 
     public abstract URL getEc2EndpointUrl() throws IOException;
@@ -279,26 +492,25 @@ public abstract class VPC extends Cloud {
         }
 
         for (ECSTemplate t : matchingTemplates) {
+            if (getCircuitBreaker(null).isOpen() || getCircuitBreaker(t.getZone()).isOpen()) {
+                LOGGER.log(Level.WARNING, "{0}. Not provisioning, ECS calls are suspended after repeated failures", t);
+                continue;
+            }
             try {
                 LOGGER.log(Level.INFO, "{0}. Attempting to provision slave needed by excess workload of " + excessWorkload + " units", t);
                 int number = Math.max(excessWorkload / t.getNumExecutors(), 1);
-                final List<ECSAbstractSlave> slaves = getNewOrExistingAvailableSlave(t, number, false);
-
-                if (slaves == null || slaves.isEmpty()) {
+                int reserved = reserveCapacity(t, number);
+                List<ServerDetail> stopped = t.claimStopped(number - reserved);
+                if (reserved + stopped.size() <= 0) {
                     LOGGER.warning("Can't raise nodes for " + t);
                     continue;
                 }
-                for (final ECSAbstractSlave slave : slaves) {
-                    if (slave == null) {
-                        LOGGER.warning("Can't raise node for " + t);
-                        continue;
-                    }
-
-                    plannedNodes.add(createPlannedNode(t, slave));
-                    excessWorkload -= t.getNumExecutors();
-                }
-                LOGGER.log(Level.INFO, "{0}. Attempting provision finished, excess workload: " + excessWorkload, t);
-                if (excessWorkload == 0) break;
+                plannedNodes.addAll(createPlannedNodes(t, reserved));
+                plannedNodes.addAll(reusePlannedNodes(t, stopped));
+                excessWorkload -= (reserved + stopped.size()) * t.getNumExecutors();
+                LOGGER.log(Level.INFO, "{0}. Planned {1} node(s), excess workload: " + excessWorkload,
+                        new Object[]{t, reserved + stopped.size()});
+                if (excessWorkload <= 0) break;
             } catch (Exception e) {
                 LOGGER.log(Level.WARNING, t + ". Exception during provisioning", e);
             }
@@ -308,52 +520,101 @@ public abstract class VPC extends Cloud {
         return plannedNodes;
     }
 
-    private NodeProvisioner.PlannedNode createPlannedNode(ECSTemplate t, ECSAbstractSlave slave) {
-        return new NodeProvisioner.PlannedNode(t.getDisplayName(),
-                Computer.threadPoolForRemoting.submit(new Callable<Node>() {
-                    int retryCount = 0;
-                    private static final int DESCRIBE_LIMIT = 2;
-
-                    public Node call() throws Exception {
-                        while (true) {
-                            String instanceId = slave.getInstanceId();
-                            ServerDetail instance = VPCHelper.getInstanceWithRetry(instanceId, slave.getCloud());
-                            if (instance == null) {
-                                LOGGER.log(Level.WARNING, "{0} Can't find instance with instance id `{1}` in cloud {2}. Terminate provisioning ",
-                                        new Object[]{t, instanceId, slave.cloudName});
-                                return null;
-                            }
-
-                            String state = instance.getStatus();
-                            if (state.equals("ACTIVE")) {
-                                Computer c = slave.toComputer();
-                                if (slave.getStopOnTerminate() && (c != null)) {
-                                    c.connect(false);
-                                }
-
-                                long startTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - TimeUtils.dateStrToLong(instance.getUpdated()));
-                                LOGGER.log(Level.INFO, "{0} Node {1} moved to RUNNING state in {2} seconds and is ready to be connected by Jenkins",
-                                        new Object[]{t, slave.getNodeName(), startTime});
-                                return slave;
-                            }
-
-                            if (!state.equals("BUILD")) {
-                                if (retryCount >= DESCRIBE_LIMIT) {
-                                    LOGGER.log(Level.WARNING, "Instance {0} did not move to running after {1} attempts, terminating provisioning",
-                                            new Object[]{instanceId, retryCount});
-                                    return null;
-                                }
-
-                                LOGGER.log(Level.INFO, "Attempt {0}: {1}. Node {2} is neither pending, neither running, it''s {3}. Will try again after 5s",
-                                        new Object[]{retryCount, t, slave.getNodeName(), state});
-                                retryCount++;
-                            }
-
-                            Thread.sleep(5000);
-                        }
-                    }
-                })
-                , t.getNumExecutors());
+    /**
+     * Returns one planned node per reserved instance straight away, the instances are requested through the
+     * {@link ProvisioningCoalescer} and waited for by the {@link InstanceStatePoller}. The reservation of each
+     * instance is committed once its id is known, or released when it could not be created.
+     */
+    private List<NodeProvisioner.PlannedNode> createPlannedNodes(ECSTemplate t, int number) {
+        List<CompletableFuture<Node>> futures = new ArrayList<>(number);
+        List<NodeProvisioner.PlannedNode> plannedNodes = new ArrayList<>(number);
+        long planned = System.currentTimeMillis();
+        for (int i = 0; i < number; i++) {
+            CompletableFuture<Node> future = new CompletableFuture<>();
+            future.whenComplete((node, error) -> health.record(error == null, System.currentTimeMillis() - planned));
+            futures.add(future);
+            plannedNodes.add(new NodeProvisioner.PlannedNode(t.getDisplayName(), future, t.getNumExecutors()));
+        }
+        List<CompletableFuture<ECSAbstractSlave>> slaves = coalescer.request(t, number);
+        for (int i = 0; i < number; i++) {
+            CompletableFuture<Node> future = futures.get(i);
+            slaves.get(i).whenComplete((slave, error) -> {
+                if (error != null) {
+                    capacityLedger.release(t.getFingerprint(), 1);
+                    LOGGER.log(Level.WARNING, t + ". Failed to create instance", error);
+                    future.completeExceptionally(error);
+                    return;
+                }
+                capacityLedger.commit(t.getFingerprint(), slave.getInstanceId());
+                awaitRunning(t, slave, future);
+            });
+        }
+        return plannedNodes;
+    }
+
+    /**
+     * Returns one planned node per stopped instance claimed beyond the instance caps. The instances are already
+     * counted against the caps, so nothing is reserved for them on the {@link CapacityLedger}.
+     */
+    private List<NodeProvisioner.PlannedNode> reusePlannedNodes(ECSTemplate t, List<ServerDetail> stopped) throws IOException {
+        List<NodeProvisioner.PlannedNode> plannedNodes = new ArrayList<>(stopped.size());
+        if (stopped.isEmpty()) {
+            return plannedNodes;
+        }
+        long planned = System.currentTimeMillis();
+        for (CompletableFuture<ECSAbstractSlave> slave : t.reuse(stopped)) {
+            CompletableFuture<Node> future = new CompletableFuture<>();
+            future.whenComplete((node, error) -> health.record(error == null, System.currentTimeMillis() - planned));
+            plannedNodes.add(new NodeProvisioner.PlannedNode(t.getDisplayName(), future, t.getNumExecutors()));
+            slave.whenComplete((s, error) -> {
+                if (error != null) {
+                    LOGGER.log(Level.WARNING, t + ". Failed to start instance", error);
+                    future.completeExceptionally(error);
+                    return;
+                }
+                awaitRunning(t, s, future);
+            });
+        }
+        return plannedNodes;
+    }
+
+    private void awaitRunning(ECSTemplate t, ECSAbstractSlave slave, CompletableFuture<Node> future) {
+        statePoller.awaitRunning(slave.getInstanceId(), slave.getLaunchTimeoutInMillis()).whenComplete((instance, error) -> {
+            if (error != null) {
+                LOGGER.log(Level.WARNING, t + ". Terminate provisioning of " + slave.getInstanceId(), error);
+                future.completeExceptionally(error);
+                return;
+            }
+            Computer c = slave.toComputer();
+            if (slave.getStopOnTerminate() && (c != null)) {
+                c.connect(false);
+            }
+
+            long startTime = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - TimeUtils.dateStrToLong(instance.getUpdated()));
+            LOGGER.log(Level.INFO, "{0} Node {1} moved to RUNNING state in {2} seconds and is ready to be connected by Jenkins",
+                    new Object[]{t, slave.getNodeName(), startTime});
+            future.complete(slave);
+        });
+    }
+
+    /**
+     * @return the executors this cloud can still add for the label within the instance caps
+     */
+    public int getRemainingExecutors(Label label) {
+        if (getCircuitBreaker(null).isOpen()) {
+            return 0;
+        }
+        long cloudRoom = Integer.MAX_VALUE;
+        long executors = 0;
+        for (ECSTemplate t : getTemplates(label)) {
+            if (getCircuitBreaker(t.getZone()).isOpen()) {
+                continue;
+            }
+            long room = Math.min(cloudRoom, capacityLedger.getRoom(t.getFingerprint(), t.getInstanceCap(), instanceCap));
+            executors += room * t.getNumExecutors();
+            cloudRoom -= room;
+        }
+        return (int) Math.min(executors, Integer.MAX_VALUE);
     }
 
     @Override
@@ -406,43 +667,61 @@ public abstract class VPC extends Cloud {
     }
 
     private List<ECSAbstractSlave> getNewOrExistingAvailableSlave(ECSTemplate t, int number, boolean forceCreateNew) {
+        int reserved = reserveCapacity(t, number);
+        List<ServerDetail> stopped = t.claimStopped(number - reserved);
+        if (reserved + stopped.size() <= 0) {
+            return null;
+        }
+        List<ECSAbstractSlave> slaves = null;
         try {
-            slaveCountingLock.lock();
-            int possibleSlavesCount = getPossibleNewSlavesCount(t);
-            if (possibleSlavesCount <= 0) {
-                LOGGER.log(Level.INFO, "{0}. Cannot provision - no capacity for instances: " + possibleSlavesCount, t);
-                return null;
+            EnumSet<ECSTemplate.ProvisionOptions> provisionOptions;
+            if (forceCreateNew)
+                provisionOptions = EnumSet.of(ECSTemplate.ProvisionOptions.FORCE_CREATE);
+            else
+                provisionOptions = EnumSet.of(ECSTemplate.ProvisionOptions.ALLOW_CREATE);
+            if (reserved > 0) {
+                slaves = t.provision(reserved, provisionOptions);
             }
-
-            try {
-                EnumSet<ECSTemplate.ProvisionOptions> provisionOptions;
-                if (forceCreateNew)
-                    provisionOptions = EnumSet.of(ECSTemplate.ProvisionOptions.FORCE_CREATE);
-                else
-                    provisionOptions = EnumSet.of(ECSTemplate.ProvisionOptions.ALLOW_CREATE);
-                if (number > possibleSlavesCount) {
-                    LOGGER.log(Level.INFO, String.format("%d nodes were requested for the template %s, " +
-                            "but because of instance cap only %d can be provisioned", number, t, possibleSlavesCount));
-                    number = possibleSlavesCount;
-                }
-                return t.provision(number, provisionOptions);
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, t + ". Exception during provisioning", e);
-                return null;
+            List<ECSAbstractSlave> all = slaves == null ? new ArrayList<>() : new ArrayList<>(slaves);
+            for (CompletableFuture<ECSAbstractSlave> slave : t.reuse(stopped)) {
+                all.add(slave.join());
             }
+            return all;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, t + ". Exception during provisioning", e);
+            return null;
         } finally {
-            slaveCountingLock.unlock();
+            int committed = 0;
+            if (slaves != null) {
+                for (ECSAbstractSlave slave : slaves) {
+                    if (slave != null) {
+                        capacityLedger.commit(t.getFingerprint(), slave.getInstanceId());
+                        committed++;
+                    }
+                }
+            }
+            capacityLedger.release(t.getFingerprint(), reserved - committed);
         }
     }
 
-    private int getPossibleNewSlavesCount(ECSTemplate t) {
-        List<ServerDetail> allInstances = VPCHelper.getAllOfServerList(this);
-        List<ServerDetail> tmpInstance = VPCHelper.getAllOfServerByTmp(t);
-        int availableTotalSlave = instanceCap - allInstances.size();
-        int availableTmpSlave = t.getInstanceCap() - tmpInstance.size();
-        LOGGER.log(Level.FINE, "Available Total Slaves: " + availableTotalSlave + " Available AMI slaves: " + availableTmpSlave
-                + " AMI: " + t.getImgID() + " TemplateDesc: " + t.description);
-        return Math.min(availableTotalSlave, availableTmpSlave);
+    /**
+     * Reserves room for up to {@code number} new instances of the template within the instance caps. The ledger is
+     * reconciled against the inventory before the first reservation, afterwards the check does not call ECS.
+     *
+     * @return the number of instances reserved, each to be committed or released on the {@link CapacityLedger}
+     */
+    public int reserveCapacity(ECSTemplate t, int number) {
+        if (!capacityLedger.isReconciled()) {
+            capacityLedger.reconcile(inventory.snapshot(FleetInventory.PROVISION_MAX_AGE));
+        }
+        int reserved = capacityLedger.reserve(t.getFingerprint(), t.getInstanceCap(), instanceCap, number);
+        if (reserved <= 0) {
+            LOGGER.log(Level.INFO, "{0}. Cannot provision - no capacity for instances", t);
+        } else if (reserved < number) {
+            LOGGER.log(Level.INFO, String.format("%d nodes were requested for the template %s, " +
+                    "but because of instance cap only %d can be provisioned", number, t, reserved));
+        }
+        return reserved;
     }
 
     public static void log(Logger logger, Level level, TaskListener listener, String message) {
@@ -476,14 +755,20 @@ public abstract class VPC extends Cloud {
     }
 
     public static ICredential createGlobalCredential(String credentialsId) {
-        AccessKeyCredentials acCredentials = getCredentials(credentialsId);
+        return createGlobalCredential(getCredentials(credentialsId));
+    }
+
+    public static ICredential createGlobalCredential(@CheckForNull AccessKeyCredentials acCredentials) {
         String accessKey = getAccessKey(acCredentials);
         String secretKey = getSecretKey(acCredentials);
         return new GlobalCredentials().withAk(accessKey).withSk(secretKey);
     }
 
     public static ICredential createBasicCredential(String credentialsId) {
-        AccessKeyCredentials acCredentials = getCredentials(credentialsId);
+        return createBasicCredential(getCredentials(credentialsId));
+    }
+
+    public static ICredential createBasicCredential(@CheckForNull AccessKeyCredentials acCredentials) {
         String accessKey = getAccessKey(acCredentials);
         String secretKey = getSecretKey(acCredentials);
         return new BasicCredentials().withAk(accessKey).withSk(secretKey);
@@ -533,6 +818,35 @@ public abstract class VPC extends Cloud {
             return FormValidation.ok();
         }
 
+        public FormValidation doCheckMaxConcurrentLaunches(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            try {
+                if (Integer.parseInt(value.trim()) >= 0) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, e.getMessage());
+            }
+            return FormValidation.error("The number of concurrent launches must be a positive number, or 0 for the default");
+        }
+
+        public FormValidation doCheckProvisioningWindow(@QueryParameter String value) {
+            if (Util.fixEmptyAndTrim(value) == null) {
+                return FormValidation.ok();
+            }
+            try {
+                int window = Integer.parseInt(value.trim());
+                if (window >= 0 && window <= ProvisioningCoalescer.MAX_WINDOW) {
+                    return FormValidation.ok();
+                }
+            } catch (NumberFormatException e) {
+                LOGGER.log(Level.FINE, e.getMessage());
+            }
+            return FormValidation.error("The provisioning window must be between 0 and " + ProvisioningCoalescer.MAX_WINDOW + " milliseconds");
+        }
+
         public FormValidation doCheckVpcID(@QueryParameter String value) {
             Jenkins.get().checkPermission(Jenkins.ADMINISTER);
             if (Util.fixEmptyAndTrim(value) == null) {
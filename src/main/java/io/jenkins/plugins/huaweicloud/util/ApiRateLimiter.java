@@ -0,0 +1,209 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import jenkins.util.Timer;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Token buckets limiting the ECS calls of a cloud, one per {@link Family} and one shared by all of them.
+ * <p>
+ * Calls of the {@link Family#isPriority() priority} families, which create, start, stop, delete or follow instances,
+ * may empty the shared bucket, while the other calls leave {@link #RESERVE} of it to them. When ECS answers that a
+ * call was throttled, the rate of its family and the shared rate are halved, and they grow back to their configured
+ * values once no call has been throttled for {@link #RECOVERY_DELAY}.
+ */
+public class ApiRateLimiter {
+    private static final Logger LOGGER = Logger.getLogger(ApiRateLimiter.class.getName());
+
+    /* Calls per second of each family, and of the whole cloud */
+    private static final double FAMILY_RATE = Double.parseDouble(System.getProperty(ApiRateLimiter.class.getName() + ".FAMILY_RATE", "10"));
+    private static final double CLOUD_RATE = Double.parseDouble(System.getProperty(ApiRateLimiter.class.getName() + ".CLOUD_RATE", "25"));
+    /* Share of the cloud bucket only the priority families may use */
+    private static final double RESERVE = 0.2;
+    private static final double MIN_RATE = 0.5;
+    private static final long RECOVERY_DELAY = TimeUnit.SECONDS.toMillis(10);
+
+    public enum Family {
+        CREATE(true), START_STOP(true), DELETE(true), JOB(true), LIST(false), DESCRIBE(false), TAGS(false);
+
+        private final boolean priority;
+
+        Family(boolean priority) {
+            this.priority = priority;
+        }
+
+        public boolean isPriority() {
+            return priority;
+        }
+    }
+
+    private final CloudStatistics statistics;
+    private final Map<Family, Bucket> buckets = new EnumMap<>(Family.class);
+    private final Bucket cloudBucket;
+
+    public ApiRateLimiter(CloudStatistics statistics) {
+        this(statistics, FAMILY_RATE, CLOUD_RATE);
+    }
+
+    ApiRateLimiter(CloudStatistics statistics, double familyRate, double cloudRate) {
+        this.statistics = statistics;
+        this.cloudBucket = new Bucket(cloudRate);
+        statistics.gauge("ratelimit.cloud.rate", cloudBucket::getRate);
+        for (Family family : Family.values()) {
+            Bucket bucket = new Bucket(familyRate);
+            buckets.put(family, bucket);
+            statistics.gauge(metric(family, "rate"), bucket::getRate);
+        }
+    }
+
+    /**
+     * Runs an ECS call once the buckets allow it, and slows the family down when ECS throttled it.
+     */
+    public <T> T call(Family family, Supplier<T> call) throws SdkException {
+        acquire(family);
+        try {
+            return call.get();
+        } catch (ServiceResponseException e) {
+            if (isThrottling(e)) {
+                throttled(family);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for a token of the family and of the cloud.
+     */
+    public void acquire(Family family) throws SdkException {
+        long start = System.currentTimeMillis();
+        try {
+            buckets.get(family).take(0);
+            cloudBucket.take(family.isPriority() ? 0 : RESERVE);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SdkException("Interrupted while waiting for the ECS rate limit", e);
+        }
+        statistics.recordTime(metric(family, "wait"), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Asynchronous variant of {@link #call}, waiting for the tokens on the {@link Timer} instead of a thread.
+     */
+    public <T> CompletableFuture<T> callAsync(Family family, Supplier<CompletableFuture<T>> call) {
+        return acquireAsync(family).thenCompose(v -> call.get()).whenComplete((result, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (cause instanceof ServiceResponseException && isThrottling((ServiceResponseException) cause)) {
+                throttled(family);
+            }
+        });
+    }
+
+    public CompletableFuture<Void> acquireAsync(Family family) {
+        CompletableFuture<Void> acquired = new CompletableFuture<>();
+        acquireAsync(family, System.currentTimeMillis(), false, acquired);
+        return acquired;
+    }
+
+    private void acquireAsync(Family family, long start, boolean familyTaken, CompletableFuture<Void> acquired) {
+        long wait = familyTaken ? 0 : buckets.get(family).tryTake(0);
+        boolean taken = wait == 0;
+        if (taken) {
+            wait = cloudBucket.tryTake(family.isPriority() ? 0 : RESERVE);
+        }
+        if (wait > 0) {
+            Timer.get().schedule(() -> acquireAsync(family, start, taken, acquired), wait, TimeUnit.MILLISECONDS);
+            return;
+        }
+        statistics.recordTime(metric(family, "wait"), System.currentTimeMillis() - start);
+        acquired.complete(null);
+    }
+
+    public void throttled(Family family) {
+        statistics.increment(metric(family, "throttled"));
+        buckets.get(family).slowDown();
+        cloudBucket.slowDown();
+        LOGGER.log(Level.INFO, "ECS throttled a {0} call, rate lowered to {1}/s", new Object[]{family, buckets.get(family).getRate()});
+    }
+
+    static boolean isThrottling(ServiceResponseException e) {
+        return e.getHttpStatusCode() == 429 || "APIGW.0308".equals(e.getErrorCode());
+    }
+
+    private static String metric(Family family, String name) {
+        return "ratelimit." + family.name().toLowerCase(Locale.ENGLISH) + "." + name;
+    }
+
+    private static final class Bucket {
+        private final double configuredRate;
+        private double rate;
+        private double tokens;
+        private long refilled = System.currentTimeMillis();
+        private long lastThrottled;
+
+        Bucket(double rate) {
+            this.configuredRate = Math.max(rate, MIN_RATE);
+            this.rate = configuredRate;
+            this.tokens = configuredRate;
+        }
+
+        /**
+         * Takes a token once the bucket holds more than {@code reserve} of its capacity.
+         */
+        synchronized void take(double reserve) throws InterruptedException {
+            long wait;
+            while ((wait = tryTake(reserve)) > 0) {
+                wait(wait);
+            }
+        }
+
+        /**
+         * @return 0 when a token was taken, otherwise the milliseconds after which one will be available
+         */
+        synchronized long tryTake(double reserve) {
+            refill();
+            double floor = Math.min(reserve * capacity(), capacity() - 1);
+            if (tokens - floor >= 1) {
+                tokens--;
+                return 0;
+            }
+            return Math.max(1, (long) Math.ceil((1 + floor - tokens) * 1000 / rate));
+        }
+
+        synchronized void slowDown() {
+            refill();
+            lastThrottled = System.currentTimeMillis();
+            rate = Math.max(MIN_RATE, rate / 2);
+            tokens = Math.min(tokens, capacity());
+        }
+
+        synchronized double getRate() {
+            return Math.round(rate * 100) / 100.0;
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            double elapsed = (now - refilled) / 1000.0;
+            refilled = now;
+            if (rate < configuredRate && now - lastThrottled > RECOVERY_DELAY) {
+                // grow back by a tenth of the configured rate per second
+                rate = Math.min(configuredRate, rate + configuredRate * 0.1 * elapsed);
+            }
+            tokens = Math.min(capacity(), tokens + elapsed * rate);
+        }
+
+        /* the bucket holds one second of calls, and at least one call */
+        private double capacity() {
+            return Math.max(rate, 1);
+        }
+    }
+}
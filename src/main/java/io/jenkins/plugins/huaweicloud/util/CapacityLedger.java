@@ -0,0 +1,236 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.Util;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Counts the instances of a cloud against the cloud and template instance caps without listing them.
+ * <p>
+ * Provisioning reserves room before creating instances, converts each reservation into a committed instance once its
+ * server id is known, and releases the reservations it could not use. Terminated instances are removed right away.
+ * The committed instances are periodically replaced by the content of the {@link FleetInventory}, keeping the changes
+ * made by the plugin after the listing was taken, so that instances created or deleted outside of Jenkins are
+ * eventually accounted for. Templates are identified by their fingerprint.
+ * <p>
+ * Existing instances picked for reuse are claimed, so that no other request picks them while they are started and
+ * until their agents are registered in Jenkins.
+ */
+public class CapacityLedger {
+    private static final Logger LOGGER = Logger.getLogger(CapacityLedger.class.getName());
+    /* How long a terminated instance is ignored by reconciliation while ECS still lists it */
+    private static final long TERMINATED_TTL = TimeUnit.MINUTES.toMillis(10);
+    /* How long an instance picked for reuse is kept from other requests */
+    private static final long CLAIM_TTL = TimeUnit.MINUTES.toMillis(10);
+
+    private final CloudStatistics statistics;
+    /* committed instance id -> template fingerprint, "" for instances of no template */
+    private final Map<String, String> instances = new HashMap<>();
+    private final Map<String, Integer> committedByTemplate = new HashMap<>();
+    private final Map<String, Integer> reservedByTemplate = new HashMap<>();
+    /* instance id -> time it was committed or terminated by the plugin */
+    private final Map<String, Long> committedAt = new HashMap<>();
+    private final Map<String, Long> terminatedAt = new HashMap<>();
+    /* instance id -> time it was claimed for reuse */
+    private final Map<String, Long> claimedAt = new HashMap<>();
+    private int reserved;
+    private boolean reconciled;
+
+    public CapacityLedger(CloudStatistics statistics) {
+        this.statistics = statistics;
+        statistics.gauge("capacity.committed", this::getCommitted);
+        statistics.gauge("capacity.reserved", this::getReserved);
+    }
+
+    /**
+     * Reserves room for up to {@code requested} instances of a template.
+     *
+     * @return the number of instances reserved, to be committed or released one by one
+     */
+    public synchronized int reserve(String template, int templateCap, int cloudCap, int requested) {
+        int cloudRoom = cloudCap - instances.size() - reserved;
+        int templateRoom = templateCap - count(committedByTemplate, template) - count(reservedByTemplate, template);
+        int granted = Math.max(0, Math.min(requested, Math.min(cloudRoom, templateRoom)));
+        if (granted > 0) {
+            reserved += granted;
+            reservedByTemplate.merge(template, granted, Integer::sum);
+            statistics.add("capacity.reservations", granted);
+        }
+        LOGGER.log(Level.FINE, "Reserved {0} of {1} instances for {2}, room in cloud: {3}, in template: {4}",
+                new Object[]{granted, requested, template, cloudRoom, templateRoom});
+        return granted;
+    }
+
+    /**
+     * Turns one reservation of the template into the instance that was created or reused for it.
+     */
+    public synchronized void commit(String template, String instanceId) {
+        releaseReservation(template, 1);
+        if (!instances.containsKey(instanceId)) {
+            add(instanceId, template);
+        }
+        committedAt.put(instanceId, System.currentTimeMillis());
+        terminatedAt.remove(instanceId);
+    }
+
+    /**
+     * Gives back reservations that did not result in an instance.
+     */
+    public synchronized void release(String template, int count) {
+        releaseReservation(template, count);
+    }
+
+    /**
+     * Drops the reservations of the templates not in the collection, whose provisioning then has nothing left to
+     * release.
+     */
+    public synchronized void retainTemplates(Collection<String> templates) {
+        for (Iterator<Map.Entry<String, Integer>> it = reservedByTemplate.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Integer> e = it.next();
+            if (!templates.contains(e.getKey())) {
+                reserved -= e.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Forgets an instance the plugin has deleted.
+     */
+    public synchronized void terminated(String instanceId) {
+        remove(instanceId);
+        committedAt.remove(instanceId);
+        terminatedAt.put(instanceId, System.currentTimeMillis());
+    }
+
+    /**
+     * Claims existing instances picked for reuse.
+     */
+    public synchronized void claim(Collection<String> instanceIds) {
+        long now = System.currentTimeMillis();
+        claimedAt.values().removeIf(at -> now - at > CLAIM_TTL);
+        for (String instanceId : instanceIds) {
+            claimedAt.put(instanceId, now);
+        }
+    }
+
+    /**
+     * @return whether the instance was recently picked for reuse by another request
+     */
+    public synchronized boolean isClaimed(String instanceId) {
+        Long at = claimedAt.get(instanceId);
+        return at != null && System.currentTimeMillis() - at <= CLAIM_TTL;
+    }
+
+    public synchronized boolean isReconciled() {
+        return reconciled;
+    }
+
+    /**
+     * Replaces the committed instances by the content of the inventory snapshot, except the instances committed or
+     * terminated by the plugin after the snapshot was taken.
+     */
+    public synchronized void reconcile(FleetInventory.Snapshot snapshot) {
+        long taken = snapshot.getTimestamp();
+        long now = System.currentTimeMillis();
+        Map<String, String> expected = new HashMap<>();
+        for (ServerDetail server : snapshot.getAll()) {
+            Long terminated = terminatedAt.get(server.getId());
+            if (terminated == null) {
+                expected.put(server.getId(), Util.fixNull(FleetInventory.fingerprintOf(server)));
+            }
+        }
+        for (Map.Entry<String, Long> e : committedAt.entrySet()) {
+            if (e.getValue() >= taken && !expected.containsKey(e.getKey()) && instances.containsKey(e.getKey())) {
+                expected.put(e.getKey(), instances.get(e.getKey()));
+            }
+        }
+        committedAt.values().removeIf(at -> at < taken);
+        for (Iterator<Map.Entry<String, Long>> it = terminatedAt.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> e = it.next();
+            if (now - e.getValue() > TERMINATED_TTL || (e.getValue() < taken && snapshot.get(e.getKey()) == null)) {
+                it.remove();
+            }
+        }
+
+        int drift = 0;
+        for (String id : instances.keySet()) {
+            if (!expected.containsKey(id)) {
+                drift++;
+            }
+        }
+        for (String id : expected.keySet()) {
+            if (!instances.containsKey(id)) {
+                drift++;
+            }
+        }
+        if (drift > 0 && reconciled) {
+            statistics.add("capacity.reconcile.drift", drift);
+            LOGGER.log(Level.FINE, "Capacity ledger corrected by {0} instances", drift);
+        }
+        instances.clear();
+        committedByTemplate.clear();
+        for (Map.Entry<String, String> e : expected.entrySet()) {
+            add(e.getKey(), e.getValue());
+        }
+        reconciled = true;
+    }
+
+    /**
+     * @return the number of instances of the template that could be reserved right now
+     */
+    public synchronized int getRoom(String template, int templateCap, int cloudCap) {
+        int cloudRoom = cloudCap - instances.size() - reserved;
+        int templateRoom = templateCap - count(committedByTemplate, template) - count(reservedByTemplate, template);
+        return Math.max(0, Math.min(cloudRoom, templateRoom));
+    }
+
+    public synchronized int getCommitted() {
+        return instances.size();
+    }
+
+    public synchronized int getCommitted(String template) {
+        return count(committedByTemplate, template);
+    }
+
+    public synchronized int getReserved() {
+        return reserved;
+    }
+
+    public synchronized int getReserved(String template) {
+        return count(reservedByTemplate, template);
+    }
+
+    private void add(String instanceId, String template) {
+        instances.put(instanceId, template);
+        committedByTemplate.merge(template, 1, Integer::sum);
+    }
+
+    private void remove(String instanceId) {
+        String template = instances.remove(instanceId);
+        if (template != null) {
+            committedByTemplate.computeIfPresent(template, (k, v) -> v > 1 ? v - 1 : null);
+        }
+    }
+
+    private void releaseReservation(String template, int count) {
+        int current = count(reservedByTemplate, template);
+        int released = Math.min(current, count);
+        if (released > 0) {
+            reserved -= released;
+            reservedByTemplate.computeIfPresent(template, (k, v) -> v > released ? v - released : null);
+        }
+    }
+
+    private static int count(Map<String, Integer> counts, String template) {
+        Integer count = counts.get(template);
+        return count == null ? 0 : count;
+    }
+}
@@ -0,0 +1,103 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stops calling the ECS API of a region or availability zone after {@link #FAILURE_THRESHOLD} consecutive outage
+ * failures. While open, calls fail immediately; after {@link #OPEN_DURATION} a single trial call is let through and
+ * closes the breaker again when it succeeds.
+ */
+public class CircuitBreaker {
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    private static final int FAILURE_THRESHOLD = Integer.getInteger(CircuitBreaker.class.getName() + ".FAILURE_THRESHOLD", 5);
+    private static final long OPEN_DURATION = Long.getLong(CircuitBreaker.class.getName() + ".OPEN_DURATION",
+            TimeUnit.MINUTES.toMillis(1));
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final String key;
+    private final int failureThreshold;
+    private final long openDuration;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private boolean trialInFlight;
+
+    public CircuitBreaker(String key) {
+        this(key, FAILURE_THRESHOLD, OPEN_DURATION);
+    }
+
+    CircuitBreaker(String key, int failureThreshold, long openDuration) {
+        this.key = key;
+        this.failureThreshold = failureThreshold;
+        this.openDuration = openDuration;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * @return whether a call may be made now, a {@code true} answer must be followed by {@link #success()} or
+     * {@link #failure()}
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDuration) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                trialInFlight = true;
+                return true;
+            default:
+                if (trialInFlight) {
+                    return false;
+                }
+                trialInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * @return whether calls are currently refused, without taking the trial call
+     */
+    public synchronized boolean isOpen() {
+        return state == State.OPEN && System.currentTimeMillis() - openedAt < openDuration
+                || state == State.HALF_OPEN && trialInFlight;
+    }
+
+    public synchronized void success() {
+        if (state != State.CLOSED) {
+            LOGGER.log(Level.INFO, "Circuit breaker {0} closed", key);
+        }
+        state = State.CLOSED;
+        failures = 0;
+        trialInFlight = false;
+    }
+
+    public synchronized void failure() {
+        failures++;
+        trialInFlight = false;
+        if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+            LOGGER.log(Level.WARNING, "Circuit breaker {0} opened after {1} failures", new Object[]{key, failures});
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+}
@@ -0,0 +1,221 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.slaves.Cloud;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.VPC;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import java.io.File;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * State of a cloud that outlives its configuration: the reservations, inventory, tracked jobs, queued actions,
+ * launches in flight and demand histories.
+ * <p>
+ * A cloud finds its runtime through its state id, which is stored with its configuration and submitted back by the
+ * configuration form, so that a configuration save or a rename keeps the runtime while a new cloud gets a new one,
+ * whatever its name. The ledger is rebuilt from the {@link FleetInventory} whenever another configuration takes the
+ * runtime over. The runtimes of the clouds removed from Jenkins are released when Jenkins saves its configuration.
+ */
+public final class CloudRuntime {
+    private static final Logger LOGGER = Logger.getLogger(CloudRuntime.class.getName());
+
+    /* state id -> runtime of the clouds configured since the last release */
+    private static final ConcurrentMap<String, CloudRuntime> RUNTIMES = new ConcurrentHashMap<>();
+
+    private final String id;
+    private volatile VPC cloud;
+    private final CloudStatistics statistics = new CloudStatistics();
+    private final CapacityLedger capacityLedger = new CapacityLedger(statistics);
+    private final StripedLocks templateLocks = new StripedLocks(statistics, "provision.lock");
+    private final ECSClientRegistry clientRegistry = new ECSClientRegistry(statistics);
+    private final ApiRateLimiter rateLimiter = new ApiRateLimiter(statistics);
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+    private final FleetInventory inventory;
+    private final ECSJobTracker jobTracker;
+    private final CreateJobQueue createJobQueue = new CreateJobQueue(statistics);
+    private final InstanceStatePoller statePoller;
+    private final ProvisioningCoalescer coalescer;
+    private final InstanceActionQueue actionQueue;
+    private final InstanceStatusLookup statusLookup;
+    private final LaunchScheduler launchScheduler;
+    private final WarmPool warmPool;
+    private final ProvisioningHealth health = new ProvisioningHealth(statistics);
+    private final DemandForecaster forecaster;
+
+    private CloudRuntime(String id, VPC cloud) {
+        this.id = id;
+        this.cloud = cloud;
+        this.inventory = new FleetInventory(cloud, statistics);
+        this.jobTracker = new ECSJobTracker(cloud, statistics);
+        this.statePoller = new InstanceStatePoller(cloud, statistics);
+        this.coalescer = new ProvisioningCoalescer(statistics, () -> this.cloud.getProvisioningWindow());
+        this.actionQueue = new InstanceActionQueue(cloud, statistics);
+        this.statusLookup = new InstanceStatusLookup(cloud, statistics);
+        this.launchScheduler = new LaunchScheduler(statistics, () -> this.cloud.getMaxConcurrentLaunches());
+        this.warmPool = new WarmPool(cloud, statistics);
+        this.forecaster = new DemandForecaster(statistics, forecastStore(cloud));
+    }
+
+    /**
+     * Returns the runtime registered under the state id, with the cloud as its configuration, or registers a new one.
+     */
+    public static CloudRuntime acquire(String id, VPC cloud) {
+        CloudRuntime runtime = RUNTIMES.computeIfAbsent(id, k -> new CloudRuntime(k, cloud));
+        runtime.attach(cloud);
+        return runtime;
+    }
+
+    /**
+     * Releases the runtimes whose state id is not in the collection.
+     */
+    public static void retain(Collection<String> ids) {
+        for (CloudRuntime runtime : RUNTIMES.values()) {
+            if (!ids.contains(runtime.id) && RUNTIMES.remove(runtime.id, runtime)) {
+                LOGGER.log(Level.FINE, "Released the runtime of cloud {0}", runtime.cloud.name);
+                runtime.clientRegistry.invalidate();
+            }
+        }
+    }
+
+    private void attach(VPC cloud) {
+        VPC previous = this.cloud;
+        this.cloud = cloud;
+        inventory.setCloud(cloud);
+        jobTracker.setCloud(cloud);
+        statePoller.setCloud(cloud);
+        actionQueue.setCloud(cloud);
+        statusLookup.setCloud(cloud);
+        warmPool.setCloud(cloud);
+        if (previous != cloud) {
+            rebuildLedger(cloud);
+        }
+    }
+
+    /* drops the reservations of the templates the configuration no longer has and recounts the instances */
+    private void rebuildLedger(VPC cloud) {
+        Set<String> fingerprints = new HashSet<>();
+        for (ECSTemplate t : cloud.getTemplates()) {
+            fingerprints.add(t.getFingerprint());
+        }
+        capacityLedger.retainTemplates(fingerprints);
+        FleetInventory.Snapshot snapshot = inventory.current();
+        if (snapshot.getTimestamp() != 0) {
+            capacityLedger.reconcile(snapshot);
+        }
+    }
+
+    /* the demand histories of the cloud are kept in the Jenkins home across restarts */
+    @CheckForNull
+    private static XmlFile forecastStore(VPC cloud) {
+        Jenkins jenkins = Jenkins.getInstanceOrNull();
+        if (jenkins == null) {
+            return null;
+        }
+        return new XmlFile(Jenkins.XSTREAM2, new File(jenkins.getRootDir(),
+                DemandForecaster.class.getName() + "-" + Util.rawEncode(cloud.name) + ".xml"));
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public CloudStatistics getStatistics() {
+        return statistics;
+    }
+
+    public CapacityLedger getCapacityLedger() {
+        return capacityLedger;
+    }
+
+    public StripedLocks getTemplateLocks() {
+        return templateLocks;
+    }
+
+    public ECSClientRegistry getClientRegistry() {
+        return clientRegistry;
+    }
+
+    public ApiRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public ConcurrentMap<String, CircuitBreaker> getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    public FleetInventory getInventory() {
+        return inventory;
+    }
+
+    public ECSJobTracker getJobTracker() {
+        return jobTracker;
+    }
+
+    public CreateJobQueue getCreateJobQueue() {
+        return createJobQueue;
+    }
+
+    public InstanceStatePoller getStatePoller() {
+        return statePoller;
+    }
+
+    public ProvisioningCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    public InstanceActionQueue getActionQueue() {
+        return actionQueue;
+    }
+
+    public InstanceStatusLookup getStatusLookup() {
+        return statusLookup;
+    }
+
+    public LaunchScheduler getLaunchScheduler() {
+        return launchScheduler;
+    }
+
+    public WarmPool getWarmPool() {
+        return warmPool;
+    }
+
+    public ProvisioningHealth getHealth() {
+        return health;
+    }
+
+    public DemandForecaster getForecaster() {
+        return forecaster;
+    }
+
+    /**
+     * Releases the runtimes of the clouds removed from Jenkins once the new configuration is saved.
+     */
+    @Extension
+    public static class ReleaseListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof Jenkins) {
+                Set<String> ids = new HashSet<>();
+                for (Cloud c : ((Jenkins) o).clouds) {
+                    if (c instanceof VPC) {
+                        ids.add(((VPC) c).getStateId());
+                    }
+                }
+                retain(ids);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Named counters, timings and gauges of a single cloud. The values are only kept in memory and are shown on the
+ * cloud page, so that the effect of the caches and queues of the plugin can be checked on a running controller.
+ */
+public class CloudStatistics {
+    private static final Logger LOGGER = Logger.getLogger(CloudStatistics.class.getName());
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Timing> timings = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Supplier<?>> gauges = new ConcurrentHashMap<>();
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void add(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public long get(String name) {
+        AtomicLong counter = counters.get(name);
+        return counter == null ? 0 : counter.get();
+    }
+
+    public void recordTime(String name, long millis) {
+        timings.computeIfAbsent(name, k -> new Timing()).record(millis);
+    }
+
+    public void gauge(String name, Supplier<?> supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Returns a sorted, human readable copy of all values.
+     */
+    public SortedMap<String, String> snapshot() {
+        SortedMap<String, String> result = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> e : counters.entrySet()) {
+            result.put(e.getKey(), String.valueOf(e.getValue().get()));
+        }
+        for (Map.Entry<String, Timing> e : timings.entrySet()) {
+            result.put(e.getKey(), e.getValue().toString());
+        }
+        for (Map.Entry<String, Supplier<?>> e : gauges.entrySet()) {
+            try {
+                result.put(e.getKey(), String.valueOf(e.getValue().get()));
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.FINE, "Failed to read gauge " + e.getKey(), ex);
+            }
+        }
+        return result;
+    }
+
+    private static final class Timing {
+        private long count;
+        private long total;
+        private long max;
+        private long last;
+
+        synchronized void record(long millis) {
+            count++;
+            total += millis;
+            max = Math.max(max, millis);
+            last = millis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (count == 0) {
+                return "-";
+            }
+            return String.format("count=%d avg=%dms max=%dms last=%dms", count, total / count, max, last);
+        }
+    }
+}
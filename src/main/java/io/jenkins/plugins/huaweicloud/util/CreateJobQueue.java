@@ -0,0 +1,75 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Create jobs of the templates of a cloud waiting for their turn, so that at most
+ * {@link io.jenkins.plugins.huaweicloud.ECSTemplate#getMaxCreateJobs()} jobs of a template run at the same time
+ * across all the bursts being created, rather than per burst. Jobs of a template start in submission order on the
+ * {@link ECSExecutors#provisioning()} executor.
+ * <p>
+ * A job is given the callback to run once it is done, that is once its servers are known or its submission failed.
+ */
+public class CreateJobQueue {
+    /* per template fingerprint, guarded by this */
+    private final Map<String, Deque<Consumer<Runnable>>> waiting = new HashMap<>();
+    private final Map<String, Integer> running = new HashMap<>();
+
+    public CreateJobQueue(CloudStatistics statistics) {
+        statistics.gauge("provision.chunks.waiting", this::getWaiting);
+    }
+
+    private synchronized int getWaiting() {
+        int count = 0;
+        for (Deque<Consumer<Runnable>> jobs : waiting.values()) {
+            count += jobs.size();
+        }
+        return count;
+    }
+
+    /**
+     * Queues the jobs of the template and starts as many as {@code maxJobs} allows.
+     */
+    public void submit(String template, int maxJobs, List<Consumer<Runnable>> jobs) {
+        synchronized (this) {
+            waiting.computeIfAbsent(template, k -> new ArrayDeque<>()).addAll(jobs);
+        }
+        dispatch(template, maxJobs);
+    }
+
+    private void dispatch(String template, int maxJobs) {
+        List<Consumer<Runnable>> started = new ArrayList<>();
+        synchronized (this) {
+            Deque<Consumer<Runnable>> jobs = waiting.get(template);
+            int count = running.getOrDefault(template, 0);
+            while (jobs != null && !jobs.isEmpty() && count < maxJobs) {
+                started.add(jobs.poll());
+                count++;
+            }
+            if (jobs != null && jobs.isEmpty()) {
+                waiting.remove(template);
+            }
+            if (count > 0) {
+                running.put(template, count);
+            } else {
+                running.remove(template);
+            }
+        }
+        for (Consumer<Runnable> job : started) {
+            ECSExecutors.provisioning().execute(() -> job.accept(() -> done(template, maxJobs)));
+        }
+    }
+
+    private void done(String template, int maxJobs) {
+        synchronized (this) {
+            running.merge(template, -1, Integer::sum);
+        }
+        dispatch(template, maxJobs);
+    }
+}
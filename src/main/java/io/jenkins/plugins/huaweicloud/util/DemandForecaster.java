@@ -0,0 +1,273 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import hudson.XmlFile;
+import jenkins.util.Timer;
+
+import javax.annotation.CheckForNull;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Forecasts the executors a label will need a few minutes ahead from the history of its demand, so that the
+ * {@link io.jenkins.plugins.huaweicloud.PredictiveProvisionerStrategy} can start agents before the builds arrive
+ * rather than after they queue up.
+ * <p>
+ * Each history combines a time decayed average of the recent demand with the peak demand seen in the same quarter
+ * of an hour of the same day of the week, once that slot has been observed. The forecast is turned into a target
+ * with hysteresis: the target follows a rising forecast at once, but only follows a falling one after it stayed
+ * below the target for {@link #SCALE_IN_DELAY}. Every forecast is compared with the demand actually observed once its
+ * horizon has passed, the errors are shown as {@code forecast.mae} and {@code forecast.error}.
+ * <p>
+ * The histories are saved to the given file at most once per slot and read back when the forecaster is created, so
+ * that a restart doesn't lose the week of seasonality learned so far.
+ */
+public class DemandForecaster {
+    private static final Logger LOGGER = Logger.getLogger(DemandForecaster.class.getName());
+    /* How far ahead demand is forecast */
+    public static final long HORIZON = Long.getLong(DemandForecaster.class.getName() + ".HORIZON", TimeUnit.MINUTES.toMillis(5));
+    /* Half life of the recent demand average */
+    private static final long HALF_LIFE = Long.getLong(DemandForecaster.class.getName() + ".HALF_LIFE", TimeUnit.MINUTES.toMillis(10));
+    /* How long the forecast must stay below the target before the target is lowered */
+    private static final long SCALE_IN_DELAY = Long.getLong(DemandForecaster.class.getName() + ".SCALE_IN_DELAY", TimeUnit.MINUTES.toMillis(15));
+    /* Share of the day of week seasonality in the forecast, once known */
+    private static final double SEASON_WEIGHT = 0.6;
+    /* Smoothing of the peaks of a slot from one week to the next */
+    private static final double SEASON_ALPHA = 0.3;
+    private static final long SLOT = TimeUnit.MINUTES.toMillis(15);
+    private static final int SLOTS = (int) (TimeUnit.DAYS.toMillis(7) / SLOT);
+    /* Histories not observed for longer than this are dropped */
+    private static final long EXPIRY = TimeUnit.DAYS.toMillis(8);
+    /* Spacing of the forecasts kept for the accuracy */
+    private static final long EVALUATION_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final CloudStatistics statistics;
+    @CheckForNull
+    private final XmlFile store;
+    private final ConcurrentMap<String, History> histories = new ConcurrentHashMap<>();
+    /* guarded by this */
+    private long evaluated;
+    private double absoluteError;
+    private double actual;
+    private long saved;
+
+    /**
+     * @param store file the histories are kept in across restarts, {@code null} to keep them in memory only
+     */
+    public DemandForecaster(CloudStatistics statistics, @CheckForNull XmlFile store) {
+        this.statistics = statistics;
+        this.store = store;
+        statistics.gauge("forecast.mae", this::getMeanAbsoluteError);
+        statistics.gauge("forecast.error", this::getWeightedError);
+        statistics.gauge("forecast.histories", histories::size);
+        load();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void load() {
+        if (store == null || !store.exists()) {
+            return;
+        }
+        try {
+            histories.putAll((Map<String, History>) store.read());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the demand histories from " + store, e);
+        }
+    }
+
+    private void save() {
+        Map<String, History> copy = new HashMap<>();
+        for (Map.Entry<String, History> e : histories.entrySet()) {
+            copy.put(e.getKey(), e.getValue().copy());
+        }
+        try {
+            store.write(copy);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save the demand histories to " + store, e);
+        }
+    }
+
+    private synchronized boolean isSaveDue(long now) {
+        if (store == null || now - saved < SLOT) {
+            return false;
+        }
+        saved = now;
+        return true;
+    }
+
+    /**
+     * @return the mean absolute error of the forecasts, in executors
+     */
+    public synchronized String getMeanAbsoluteError() {
+        return evaluated == 0 ? "-" : String.format("%.2f", absoluteError / evaluated);
+    }
+
+    /**
+     * @return the absolute error of the forecasts relative to the actual demand
+     */
+    public synchronized String getWeightedError() {
+        return actual == 0 ? "-" : Math.round(absoluteError * 100 / actual) + "%";
+    }
+
+    private synchronized void evaluate(double forecast, int demand) {
+        evaluated++;
+        absoluteError += Math.abs(forecast - demand);
+        actual += demand;
+    }
+
+    /**
+     * Records the executors currently needed under the key and updates its target.
+     *
+     * @return the executors to have {@link #HORIZON} from now
+     */
+    public int observe(String key, long now, int demand) {
+        History history = histories.computeIfAbsent(key, k -> new History(now));
+        int target = history.observe(this, now, demand);
+        if (histories.size() > 1) {
+            expire(now);
+        }
+        if (isSaveDue(now)) {
+            Timer.get().submit(this::save);
+        }
+        return target;
+    }
+
+    /**
+     * The keys starting with the prefix forecast overlapping demand, such as the labels a template serves, so their
+     * targets are not added up.
+     *
+     * @return the highest current target of the keys starting with the prefix, in executors
+     */
+    public int getTarget(String prefix) {
+        int target = 0;
+        for (Map.Entry<String, History> e : histories.entrySet()) {
+            if (e.getKey().startsWith(prefix)) {
+                target = Math.max(target, e.getValue().getTarget());
+            }
+        }
+        return target;
+    }
+
+    private void expire(long now) {
+        histories.values().removeIf(h -> h.isExpired(now));
+    }
+
+    private static int slot(long time) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTimeInMillis(time);
+        int minutes = ((calendar.get(Calendar.DAY_OF_WEEK) - 1) * 24 + calendar.get(Calendar.HOUR_OF_DAY)) * 60
+                + calendar.get(Calendar.MINUTE);
+        return (int) (TimeUnit.MINUTES.toMillis(minutes) / SLOT) % SLOTS;
+    }
+
+    private static final class History {
+        private double level;
+        private long lastUpdate;
+        private double[] season = new double[SLOTS];
+        private boolean[] seen = new boolean[SLOTS];
+        private int currentSlot;
+        private int currentPeak;
+        private int target;
+        private long belowSince;
+        /* forecasts awaiting their horizon, as {due time, forecast} */
+        private transient ArrayDeque<double[]> pending = new ArrayDeque<>();
+
+        History(long now) {
+            lastUpdate = now;
+            currentSlot = slot(now);
+        }
+
+        private Object readResolve() {
+            pending = new ArrayDeque<>();
+            return this;
+        }
+
+        synchronized History copy() {
+            History copy = new History(lastUpdate);
+            copy.level = level;
+            copy.season = season.clone();
+            copy.seen = seen.clone();
+            copy.currentSlot = currentSlot;
+            copy.currentPeak = currentPeak;
+            copy.target = target;
+            copy.belowSince = belowSince;
+            return copy;
+        }
+
+        synchronized int getTarget() {
+            return target;
+        }
+
+        synchronized boolean isExpired(long now) {
+            return now - lastUpdate > EXPIRY;
+        }
+
+        synchronized int observe(DemandForecaster forecaster, long now, int demand) {
+            for (Iterator<double[]> it = pending.iterator(); it.hasNext(); ) {
+                double[] forecast = it.next();
+                if (forecast[0] > now) {
+                    break;
+                }
+                forecaster.evaluate(forecast[1], demand);
+                it.remove();
+            }
+
+            double decay = Math.pow(0.5, (double) Math.max(now - lastUpdate, 0) / HALF_LIFE);
+            level = decay * level + (1 - decay) * demand;
+            lastUpdate = now;
+
+            int slot = slot(now);
+            if (slot != currentSlot) {
+                fold(currentSlot, currentPeak);
+                currentSlot = slot;
+                currentPeak = 0;
+            }
+            currentPeak = Math.max(currentPeak, demand);
+
+            double forecast = forecast(now + HORIZON);
+            if (pending.isEmpty() || pending.getLast()[0] <= now + HORIZON - EVALUATION_INTERVAL) {
+                pending.addLast(new double[]{now + HORIZON, forecast});
+            }
+            return adjust(forecaster.statistics, now, forecast);
+        }
+
+        private void fold(int slot, int peak) {
+            season[slot] = seen[slot] ? season[slot] + SEASON_ALPHA * (peak - season[slot]) : peak;
+            seen[slot] = true;
+        }
+
+        private double forecast(long time) {
+            int slot = slot(time);
+            if (!seen[slot]) {
+                return level;
+            }
+            return SEASON_WEIGHT * season[slot] + (1 - SEASON_WEIGHT) * level;
+        }
+
+        private int adjust(CloudStatistics statistics, long now, double forecast) {
+            int wanted = (int) Math.round(forecast);
+            if (wanted >= target) {
+                if (wanted > target) {
+                    statistics.increment("forecast.scale_out");
+                }
+                target = wanted;
+                belowSince = 0;
+            } else if (belowSince == 0) {
+                belowSince = now;
+            } else if (now - belowSince >= SCALE_IN_DELAY) {
+                statistics.increment("forecast.scale_in");
+                target = wanted;
+                belowSince = now;
+            }
+            return target;
+        }
+    }
+}
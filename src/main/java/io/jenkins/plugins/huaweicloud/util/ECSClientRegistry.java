@@ -0,0 +1,230 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.huaweicloud.sdk.core.auth.ICredential;
+import com.huaweicloud.sdk.core.region.Region;
+import com.huaweicloud.sdk.ecs.v2.EcsAsyncClient;
+import com.huaweicloud.sdk.ecs.v2.EcsClient;
+import com.huaweicloud.sdk.ecs.v2.region.EcsRegion;
+import com.huaweicloud.sdk.eip.v2.EipClient;
+import com.huaweicloud.sdk.eip.v2.region.EipRegion;
+import com.huaweicloud.sdk.iam.v3.IamClient;
+import com.huaweicloud.sdk.iam.v3.region.IamRegion;
+import hudson.Extension;
+import hudson.Util;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.util.Secret;
+import io.jenkins.plugins.huaweicloud.VPC;
+import io.jenkins.plugins.huaweicloud.credentials.AccessKeyCredentials;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Per cloud cache of the Huawei Cloud SDK clients.
+ * <p>
+ * Building a client means a credentials store scan, a project id resolution and a new HTTP stack, so clients are
+ * built once per (region, credentials id, endpoint) and reused with their pooled connections. The registry is part
+ * of the {@link CloudRuntime} of its cloud, so it follows the cloud across configuration saves, which the key already
+ * tells apart. It is flushed when the {@link io.jenkins.plugins.huaweicloud.credentials.HWCAccessKeyCredentials}
+ * change or the cloud is removed.
+ */
+public class ECSClientRegistry {
+    private static final Logger LOGGER = Logger.getLogger(ECSClientRegistry.class.getName());
+    public static final String CACHE_HITS = "clients.cache.hits";
+    public static final String CACHE_MISSES = "clients.cache.misses";
+
+    /* How long a resolved access key is trusted before the credentials store is checked again */
+    private static final long CREDENTIALS_TTL = Long.getLong("io.jenkins.plugins.huaweicloud.util.ECSClientRegistry.CREDENTIALS_TTL",
+            TimeUnit.MINUTES.toMillis(10));
+
+    private static final Set<ECSClientRegistry> REGISTRIES = Collections.synchronizedSet(
+            Collections.newSetFromMap(new WeakHashMap<>()));
+
+    private final CloudStatistics statistics;
+    private final ConcurrentMap<ClientKey, Object> clients = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, ResolvedCredential> credentials = new ConcurrentHashMap<>();
+
+    public ECSClientRegistry(CloudStatistics statistics) {
+        this.statistics = statistics;
+        statistics.gauge("clients.cached", clients::size);
+        REGISTRIES.add(this);
+    }
+
+    public EcsClient getEcsClient(String region, String credentialsId) {
+        Region r = EcsRegion.valueOf(region);
+        return get(EcsClient.class, r, credentialsId, auth -> EcsClient.newBuilder()
+                .withCredential(auth.basic())
+                .withRegion(r)
+                .build());
+    }
+
+    public EcsAsyncClient getEcsAsyncClient(String region, String credentialsId) {
+        Region r = EcsRegion.valueOf(region);
+        return get(EcsAsyncClient.class, r, credentialsId, auth -> EcsAsyncClient.newBuilder()
+                .withCredential(auth.basic())
+                .withRegion(r)
+                .build());
+    }
+
+    public EipClient getEipClient(String region, String credentialsId) {
+        Region r = EipRegion.valueOf("cn-south-1");
+        return get(EipClient.class, r, credentialsId, auth -> EipClient.newBuilder()
+                .withCredential(auth.basic())
+                .withRegion(r)
+                .build());
+    }
+
+    public IamClient getIamClient(String region, String credentialsId) {
+        Region r = IamRegion.valueOf(region);
+        return get(IamClient.class, r, credentialsId, auth -> IamClient.newBuilder()
+                .withCredential(auth.global())
+                .withRegion(r)
+                .build());
+    }
+
+    public long getHits() {
+        return statistics.get(CACHE_HITS);
+    }
+
+    public long getMisses() {
+        return statistics.get(CACHE_MISSES);
+    }
+
+    /**
+     * Drops every cached client and credential, the next call rebuilds them.
+     */
+    public void invalidate() {
+        clients.clear();
+        credentials.clear();
+    }
+
+    /**
+     * Drops the clients of every cloud, used when the credentials store changes.
+     */
+    public static void invalidateAll() {
+        List<ECSClientRegistry> registries;
+        synchronized (REGISTRIES) {
+            registries = new ArrayList<>(REGISTRIES);
+        }
+        for (ECSClientRegistry registry : registries) {
+            registry.invalidate();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(Class<T> type, Region region, String credentialsId, Function<ResolvedCredential, T> factory) {
+        ResolvedCredential auth = resolve(credentialsId);
+        ClientKey key = new ClientKey(type, region.getId(), Util.fixNull(credentialsId), region.getEndpoint());
+        Object client = clients.get(key);
+        if (client != null) {
+            statistics.increment(CACHE_HITS);
+            return (T) client;
+        }
+        statistics.increment(CACHE_MISSES);
+        LOGGER.log(Level.FINE, "Building {0} for region {1}", new Object[]{type.getSimpleName(), region.getId()});
+        return (T) clients.computeIfAbsent(key, k -> factory.apply(auth));
+    }
+
+    private ResolvedCredential resolve(String credentialsId) {
+        String id = Util.fixNull(credentialsId);
+        long now = System.currentTimeMillis();
+        ResolvedCredential current = credentials.get(id);
+        if (current != null && now - current.resolvedAt < CREDENTIALS_TTL) {
+            return current;
+        }
+        ResolvedCredential fresh = new ResolvedCredential(VPC.getCredentials(credentialsId), now);
+        ResolvedCredential previous = credentials.put(id, fresh);
+        if (previous != null && !previous.sameKeys(fresh)) {
+            LOGGER.log(Level.INFO, "Access key of credentials {0} changed, rebuilding clients", id);
+            clients.keySet().removeIf(k -> k.credentialsId.equals(id));
+        }
+        return fresh;
+    }
+
+    private static final class ResolvedCredential {
+        private final AccessKeyCredentials credentials;
+        private final long resolvedAt;
+
+        ResolvedCredential(AccessKeyCredentials credentials, long resolvedAt) {
+            this.credentials = credentials;
+            this.resolvedAt = resolvedAt;
+        }
+
+        ICredential basic() {
+            return VPC.createBasicCredential(credentials);
+        }
+
+        ICredential global() {
+            return VPC.createGlobalCredential(credentials);
+        }
+
+        boolean sameKeys(ResolvedCredential other) {
+            if (credentials == null || other.credentials == null) {
+                return credentials == other.credentials;
+            }
+            return Objects.equals(plain(credentials.getAccessKey()), plain(other.credentials.getAccessKey()))
+                    && Objects.equals(plain(credentials.getSecretKey()), plain(other.credentials.getSecretKey()));
+        }
+
+        private static String plain(Secret secret) {
+            return secret == null ? null : secret.getPlainText();
+        }
+    }
+
+    private static final class ClientKey {
+        private final Class<?> type;
+        private final String region;
+        private final String credentialsId;
+        private final String endpoint;
+
+        ClientKey(Class<?> type, String region, String credentialsId, String endpoint) {
+            this.type = type;
+            this.region = region;
+            this.credentialsId = credentialsId;
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (o == null || getClass() != o.getClass())
+                return false;
+            ClientKey other = (ClientKey) o;
+            return type.equals(other.type) && Objects.equals(region, other.region)
+                    && credentialsId.equals(other.credentialsId) && Objects.equals(endpoint, other.endpoint);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, region, credentialsId, endpoint);
+        }
+    }
+
+    /**
+     * Flushes the cached clients as soon as the global credentials are saved.
+     */
+    @Extension
+    public static class CredentialsChangeListener extends SaveableListener {
+        @Override
+        public void onChange(Saveable o, XmlFile file) {
+            if (o instanceof SystemCredentialsProvider) {
+                LOGGER.log(Level.FINE, "Credentials changed, flushing Huawei Cloud clients");
+                invalidateAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executors of the plugin's blocking work, kept apart from {@link hudson.model.Computer#threadPoolForRemoting} which
+ * is shared with every other plugin.
+ * <ul>
+ *     <li>{@link #provisioning()} creates ECS instances and waits for them on behalf of the planned nodes, so that the
+ *     {@link hudson.slaves.NodeProvisioner} tick never blocks on the ECS API</li>
+ *     <li>{@link #launcher()} runs the SSH bootstrap of the agents</li>
+ *     <li>{@link #termination()} checks and deletes the instances of terminated agents</li>
+ * </ul>
+ * Each of them is a bounded pool of platform threads. With {@code -Dio.jenkins.plugins.huaweicloud.util.ECSExecutors.VIRTUAL_THREADS=true}
+ * on a JDK providing virtual threads, every task gets its own virtual thread instead, so that hundreds of agents
+ * waiting for SSH don't hold as many platform threads.
+ */
+public final class ECSExecutors {
+    private static final Logger LOGGER = Logger.getLogger(ECSExecutors.class.getName());
+
+    public static final boolean VIRTUAL_THREADS = Boolean.getBoolean(ECSExecutors.class.getName() + ".VIRTUAL_THREADS");
+    private static final int PROVISIONING_THREADS = Integer.getInteger(ECSExecutors.class.getName() + ".PROVISIONING_THREADS", 20);
+    private static final int LAUNCHER_THREADS = Integer.getInteger(ECSExecutors.class.getName() + ".LAUNCHER_THREADS", 50);
+    private static final int TERMINATION_THREADS = Integer.getInteger(ECSExecutors.class.getName() + ".TERMINATION_THREADS", 10);
+
+    private static final ExecutorService PROVISIONING = create("Huawei Cloud provisioning", PROVISIONING_THREADS);
+    private static final ExecutorService LAUNCHER = create("Huawei Cloud launcher", LAUNCHER_THREADS);
+    private static final ExecutorService TERMINATION = create("Huawei Cloud termination", TERMINATION_THREADS);
+
+    private ECSExecutors() {
+    }
+
+    public static ExecutorService provisioning() {
+        return PROVISIONING;
+    }
+
+    public static ExecutorService launcher() {
+        return LAUNCHER;
+    }
+
+    public static ExecutorService termination() {
+        return TERMINATION;
+    }
+
+    private static ExecutorService create(String name, int threads) {
+        if (VIRTUAL_THREADS) {
+            ExecutorService executor = newVirtualThreadPerTaskExecutor(name);
+            if (executor != null) {
+                return executor;
+            }
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(Math.max(threads, 1), Math.max(threads, 1), 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /* Thread.ofVirtual().name(name + " ", 0).factory() and Executors.newThreadPerTaskExecutor(factory), which the
+       Java 8 API the plugin is built against doesn't know */
+    private static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name + " ", 0L);
+            ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            Method newExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newExecutor.invoke(null, factory);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.log(Level.INFO, "Virtual threads are not available on this JDK, {0} uses platform threads: {1}",
+                    new Object[]{name, e});
+            return null;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.ecs.v2.model.ShowJobResponse;
+import com.huaweicloud.sdk.ecs.v2.model.SubJob;
+import io.jenkins.plugins.huaweicloud.VPC;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Follows every outstanding ECS job of a cloud from a single polling loop.
+ * <p>
+ * A job creating {@code n} servers is tracked as {@code n} futures that complete with a server id as soon as the
+ * matching sub job reports one, so waiting planned nodes are released one by one instead of when the whole job is
+ * done. The loop polls quickly while jobs make progress and backs off up to {@link #MAX_INTERVAL} while they don't.
+ */
+public class ECSJobTracker {
+    private static final Logger LOGGER = Logger.getLogger(ECSJobTracker.class.getName());
+
+    private static final long MIN_INTERVAL = Long.getLong(ECSJobTracker.class.getName() + ".MIN_INTERVAL",
+            TimeUnit.SECONDS.toMillis(2));
+    private static final long MAX_INTERVAL = Long.getLong(ECSJobTracker.class.getName() + ".MAX_INTERVAL",
+            TimeUnit.SECONDS.toMillis(10));
+    /* Jobs still running after this long are given up, their remaining servers fail */
+    private static final long JOB_TIMEOUT = Long.getLong(ECSJobTracker.class.getName() + ".JOB_TIMEOUT",
+            TimeUnit.MINUTES.toMillis(30));
+
+    private volatile VPC cloud;
+    private final CloudStatistics statistics;
+    private final ConcurrentMap<String, TrackedJob> jobs = new ConcurrentHashMap<>();
+    private final long minInterval;
+    private final long maxInterval;
+    private long interval;
+    private boolean scheduled;
+
+    public ECSJobTracker(VPC cloud, CloudStatistics statistics) {
+        this(cloud, statistics, MIN_INTERVAL, MAX_INTERVAL);
+    }
+
+    ECSJobTracker(VPC cloud, CloudStatistics statistics, long minInterval, long maxInterval) {
+        this.cloud = cloud;
+        this.statistics = statistics;
+        this.minInterval = minInterval;
+        this.maxInterval = maxInterval;
+        this.interval = minInterval;
+        statistics.gauge("jobs.outstanding", jobs::size);
+    }
+
+    public void setCloud(VPC cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Starts following a job that creates {@code servers} servers.
+     *
+     * @return one future per server, completed with the server id or with the reason the server was not created
+     */
+    public List<CompletableFuture<String>> track(String jobId, int servers) {
+        TrackedJob job = new TrackedJob(jobId, servers);
+        jobs.put(jobId, job);
+        statistics.increment("jobs.tracked");
+        synchronized (this) {
+            interval = minInterval;
+        }
+        schedule();
+        return job.servers;
+    }
+
+    /**
+     * Follows a job acting on existing servers, such as a batch delete or stop, server by server.
+     *
+     * @return one future per server id, completed when the sub job of the server succeeded or failed
+     */
+    public Map<String, CompletableFuture<Void>> track(String jobId, Collection<String> serverIds) {
+        TrackedJob job = new TrackedJob(jobId, 0);
+        for (String serverId : serverIds) {
+            job.actions.put(serverId, new CompletableFuture<>());
+        }
+        jobs.put(jobId, job);
+        statistics.increment("jobs.tracked");
+        schedule();
+        return Collections.unmodifiableMap(job.actions);
+    }
+
+    private synchronized void schedule() {
+        if (!scheduled && !jobs.isEmpty()) {
+            scheduled = true;
+            Timer.get().schedule(this::poll, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void poll() {
+        AtomicBoolean progress = new AtomicBoolean();
+        List<CompletableFuture<?>> polls = new ArrayList<>();
+        try {
+            for (TrackedJob job : new ArrayList<>(jobs.values())) {
+                CompletableFuture<ShowJobResponse> shown;
+                try {
+                    shown = showJob(job.jobId);
+                } catch (RuntimeException e) {
+                    // such as the client failing to build, the job is polled again on the next tick
+                    shown = new CompletableFuture<>();
+                    shown.completeExceptionally(e);
+                }
+                polls.add(shown.handle((response, error) -> {
+                    if (error != null) {
+                        statistics.increment("jobs.poll.errors");
+                        LOGGER.log(Level.FINE, "Failed to poll ECS job " + job.jobId, error);
+                    } else if (job.update(response)) {
+                        progress.set(true);
+                    }
+                    if (!job.done.isDone() && System.currentTimeMillis() - job.submitted > JOB_TIMEOUT) {
+                        String reason = "ECS job " + job.jobId + " did not finish within " + JOB_TIMEOUT + "ms";
+                        job.failRemaining(reason);
+                        job.done.completeExceptionally(new SdkException(reason));
+                    }
+                    if (job.done.isDone()) {
+                        jobs.remove(job.jobId);
+                    }
+                    return null;
+                }));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Unexpected failure while polling ECS jobs", e);
+        }
+        // the next tick starts once every job of this one was answered
+        CompletableFuture.allOf(polls.toArray(new CompletableFuture[0])).whenComplete((v, e) -> {
+            if (e != null) {
+                LOGGER.log(Level.WARNING, "Unexpected failure while polling ECS jobs", e);
+            }
+            synchronized (this) {
+                interval = progress.get() ? minInterval : Math.min(maxInterval, interval * 3 / 2);
+                scheduled = false;
+                schedule();
+            }
+        });
+    }
+
+    CompletableFuture<ShowJobResponse> showJob(String jobId) {
+        return VPCAsyncHelper.showJob(jobId, cloud);
+    }
+
+    private final class TrackedJob {
+        private final String jobId;
+        private final long submitted = System.currentTimeMillis();
+        private final List<CompletableFuture<String>> servers;
+        private final CompletableFuture<ShowJobResponse.StatusEnum> done = new CompletableFuture<>();
+        private final Map<String, CompletableFuture<Void>> actions = new HashMap<>();
+        private final Set<String> resolved = new HashSet<>();
+        private int next;
+        private boolean firstServer;
+
+        TrackedJob(String jobId, int count) {
+            this.jobId = jobId;
+            List<CompletableFuture<String>> futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                futures.add(new CompletableFuture<>());
+            }
+            this.servers = Collections.unmodifiableList(futures);
+        }
+
+        /**
+         * @return whether a server was resolved or the job finished
+         */
+        boolean update(ShowJobResponse response) {
+            boolean progress = false;
+            if (response.getEntities() != null && response.getEntities().getSubJobs() != null) {
+                for (SubJob subJob : response.getEntities().getSubJobs()) {
+                    String key = subJob.getJobId();
+                    if (key == null || resolved.contains(key)) {
+                        continue;
+                    }
+                    String serverId = subJob.getEntities() == null ? null : subJob.getEntities().getServerId();
+                    CompletableFuture<Void> action = serverId == null ? null : actions.get(serverId);
+                    if (action != null) {
+                        if (subJob.getStatus() == SubJob.StatusEnum.SUCCESS) {
+                            resolved.add(key);
+                            action.complete(null);
+                            progress = true;
+                        } else if (subJob.getStatus() == SubJob.StatusEnum.FAIL) {
+                            resolved.add(key);
+                            action.completeExceptionally(new SdkException("ECS sub job " + key + " failed on " + serverId + ": " + subJob.getFailReason()));
+                            progress = true;
+                        }
+                        continue;
+                    }
+                    if (next >= servers.size()) {
+                        continue;
+                    }
+                    if (subJob.getStatus() == SubJob.StatusEnum.FAIL) {
+                        resolved.add(key);
+                        servers.get(next++).completeExceptionally(new SdkException("ECS sub job " + key + " failed: " + subJob.getFailReason()));
+                        progress = true;
+                    } else if (serverId != null && !serverId.isEmpty()) {
+                        resolved.add(key);
+                        if (!firstServer) {
+                            firstServer = true;
+                            statistics.recordTime("jobs.latency.first_server", System.currentTimeMillis() - submitted);
+                        }
+                        servers.get(next++).complete(serverId);
+                        progress = true;
+                    }
+                }
+            }
+            ShowJobResponse.StatusEnum status = response.getStatus();
+            if (status == ShowJobResponse.StatusEnum.SUCCESS || status == ShowJobResponse.StatusEnum.FAIL) {
+                if (status == ShowJobResponse.StatusEnum.FAIL) {
+                    statistics.increment("jobs.failed");
+                }
+                statistics.recordTime("jobs.latency.all_servers", System.currentTimeMillis() - submitted);
+                if (status == ShowJobResponse.StatusEnum.SUCCESS) {
+                    for (CompletableFuture<Void> action : actions.values()) {
+                        action.complete(null);
+                    }
+                }
+                failRemaining("ECS job " + jobId + " ended with " + status + " before reporting the server: " + response.getFailReason());
+                done.complete(status);
+                progress = true;
+            }
+            return progress;
+        }
+
+        void failRemaining(String reason) {
+            for (int i = next; i < servers.size(); i++) {
+                servers.get(i).completeExceptionally(new SdkException(reason));
+            }
+            next = servers.size();
+            for (CompletableFuture<Void> action : actions.values()) {
+                action.completeExceptionally(new SdkException(reason));
+            }
+        }
+    }
+}
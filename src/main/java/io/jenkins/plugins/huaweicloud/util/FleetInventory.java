@@ -0,0 +1,322 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import io.jenkins.plugins.huaweicloud.ECSAbstractSlave;
+import io.jenkins.plugins.huaweicloud.ECSTag;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.VPC;
+import jenkins.model.Jenkins;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot of every ECS instance of a cloud, indexed by instance id, template fingerprint and status.
+ * <p>
+ * The snapshot is refreshed in the background every {@link #REFRESH_INTERVAL} while the cloud has agents or
+ * reservations, an idle cloud is only listed on demand. Readers ask for a snapshot no older than a given age and
+ * only trigger a listing themselves when the copy they have is too old. Concurrent refreshes
+ * are collapsed into one call, and instances created or removed by the plugin are written through so that capacity
+ * checks see them before the next listing.
+ */
+public class FleetInventory {
+    private static final Logger LOGGER = Logger.getLogger(FleetInventory.class.getName());
+
+    public static final long REFRESH_INTERVAL = Long.getLong(FleetInventory.class.getName() + ".REFRESH_INTERVAL",
+            TimeUnit.SECONDS.toMillis(30));
+    /* Maximum age of the snapshot used to count instances against the instance caps */
+    public static final long PROVISION_MAX_AGE = Long.getLong(FleetInventory.class.getName() + ".PROVISION_MAX_AGE",
+            TimeUnit.SECONDS.toMillis(10));
+    /* Maximum age of the snapshot used to answer instance status checks of the computers */
+    public static final long STATUS_MAX_AGE = Long.getLong(FleetInventory.class.getName() + ".STATUS_MAX_AGE",
+            TimeUnit.SECONDS.toMillis(60));
+
+    private volatile VPC cloud;
+    private final CloudStatistics statistics;
+    private final Object refreshLock = new Object();
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public FleetInventory(VPC cloud, CloudStatistics statistics) {
+        this.cloud = cloud;
+        this.statistics = statistics;
+        statistics.gauge("inventory.instances", () -> snapshot.size());
+        statistics.gauge("inventory.age", () -> snapshot.getTimestamp() == 0 ? "-" : snapshot.getAge() + "ms");
+    }
+
+    public void setCloud(VPC cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Returns the current snapshot without calling ECS, it may be empty or arbitrarily old.
+     */
+    public Snapshot current() {
+        return snapshot;
+    }
+
+    /**
+     * Returns a snapshot that is at most {@code maxAgeMillis} old, listing the instances if needed.
+     *
+     * @throws SdkException if a listing was needed and failed
+     */
+    public Snapshot snapshot(long maxAgeMillis) throws SdkException {
+        Snapshot s = snapshot;
+        if (s.getTimestamp() != 0 && s.getAge() <= maxAgeMillis) {
+            statistics.increment("inventory.reads.cached");
+            return s;
+        }
+        return forceRefresh();
+    }
+
+    /**
+     * Lists the instances now. Callers arriving while another refresh is running wait for it and reuse its result
+     * when it started after they asked.
+     *
+     * @throws SdkException if the listing failed, the previous snapshot is kept
+     */
+    public Snapshot forceRefresh() throws SdkException {
+        long requested = System.currentTimeMillis();
+        synchronized (refreshLock) {
+            Snapshot s = snapshot;
+            if (s.getTimestamp() >= requested) {
+                statistics.increment("inventory.reads.shared");
+                return s;
+            }
+            return refresh();
+        }
+    }
+
+    /**
+     * Records instances the plugin has just created or started, they are visible until the next listing.
+     */
+    public void update(Collection<ServerDetail> servers) {
+        if (servers.isEmpty()) {
+            return;
+        }
+        synchronized (refreshLock) {
+            Map<String, ServerDetail> byId = new HashMap<>(snapshot.byId);
+            for (ServerDetail server : servers) {
+                if (VPCHelper.isTerminated(server.getStatus())) {
+                    byId.remove(server.getId());
+                } else {
+                    byId.put(server.getId(), server);
+                }
+            }
+            snapshot = new Snapshot(snapshot.getTimestamp(), byId);
+        }
+    }
+
+    /**
+     * Forgets an instance the plugin has just deleted.
+     */
+    public void remove(String instanceId) {
+        synchronized (refreshLock) {
+            if (snapshot.get(instanceId) == null) {
+                return;
+            }
+            Map<String, ServerDetail> byId = new HashMap<>(snapshot.byId);
+            byId.remove(instanceId);
+            snapshot = new Snapshot(snapshot.getTimestamp(), byId);
+        }
+    }
+
+    private Snapshot refresh() throws SdkException {
+        long start = System.currentTimeMillis();
+        List<ServerDetail> servers;
+        try {
+            servers = listServers();
+        } catch (SdkException e) {
+            statistics.increment("inventory.refresh.failures");
+            throw e;
+        } finally {
+            statistics.recordTime("inventory.refresh", System.currentTimeMillis() - start);
+        }
+
+        // Only the records whose updated time moved are replaced, unchanged records keep their identity
+        Snapshot previous = snapshot;
+        Map<String, ServerDetail> byId = new HashMap<>(servers.size());
+        int changed = 0;
+        for (ServerDetail server : servers) {
+            ServerDetail known = previous.get(server.getId());
+            if (known != null && Objects.equals(known.getUpdated(), server.getUpdated())
+                    && Objects.equals(known.getStatus(), server.getStatus())) {
+                byId.put(server.getId(), known);
+            } else {
+                byId.put(server.getId(), server);
+                changed++;
+            }
+        }
+        int removed = 0;
+        for (String id : previous.byId.keySet()) {
+            if (!byId.containsKey(id)) {
+                removed++;
+            }
+        }
+        statistics.add("inventory.changes", changed + removed);
+        LOGGER.log(Level.FINE, "Inventory of {0}: {1} instances, {2} changed, {3} removed",
+                new Object[]{cloud.name, byId.size(), changed, removed});
+
+        Snapshot fresh = changed + removed == 0 ? previous.withTimestamp(start) : new Snapshot(start, byId);
+        snapshot = fresh;
+        return fresh;
+    }
+
+    protected List<ServerDetail> listServers() throws SdkException {
+        return VPCHelper.getAllOfServerList(cloud);
+    }
+
+    /**
+     * Reads the template fingerprint from the {@link ECSTag#TAG_NAME_JENKINS_TEMPLATE} tag of the instance, or from
+     * its name for the instances created before the tag existed, see {@link ECSTemplate#getFingerprint()}.
+     */
+    @CheckForNull
+    public static String fingerprintOf(ServerDetail server) {
+        if (server.getTags() != null) {
+            String prefix = ECSTag.TAG_NAME_JENKINS_TEMPLATE + "=";
+            for (String tag : server.getTags()) {
+                if (tag.startsWith(prefix)) {
+                    return tag.substring(prefix.length());
+                }
+            }
+        }
+        String name = server.getName();
+        int start = ECSTemplate.srvNamePrefix.length();
+        if (name == null || !name.startsWith(ECSTemplate.srvNamePrefix) || name.length() < start + ECSTemplate.FINGERPRINT_LENGTH) {
+            return null;
+        }
+        return name.substring(start, start + ECSTemplate.FINGERPRINT_LENGTH);
+    }
+
+    /**
+     * Immutable view of the instances at a point in time.
+     */
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(0, Collections.emptyMap());
+
+        private final long timestamp;
+        private final Map<String, ServerDetail> byId;
+        private final Map<String, List<ServerDetail>> byFingerprint;
+        private final Map<String, List<ServerDetail>> byStatus;
+
+        private Snapshot(long timestamp, Map<String, ServerDetail> byId) {
+            this.timestamp = timestamp;
+            this.byId = Collections.unmodifiableMap(byId);
+            Map<String, List<ServerDetail>> fingerprints = new HashMap<>();
+            Map<String, List<ServerDetail>> statuses = new HashMap<>();
+            for (ServerDetail server : byId.values()) {
+                String fingerprint = fingerprintOf(server);
+                if (fingerprint != null) {
+                    fingerprints.computeIfAbsent(fingerprint, k -> new ArrayList<>()).add(server);
+                }
+                statuses.computeIfAbsent(server.getStatus(), k -> new ArrayList<>()).add(server);
+            }
+            this.byFingerprint = fingerprints;
+            this.byStatus = statuses;
+        }
+
+        private Snapshot(Snapshot other, long timestamp) {
+            this.timestamp = timestamp;
+            this.byId = other.byId;
+            this.byFingerprint = other.byFingerprint;
+            this.byStatus = other.byStatus;
+        }
+
+        private Snapshot withTimestamp(long timestamp) {
+            return new Snapshot(this, timestamp);
+        }
+
+        /**
+         * Time the listing behind this snapshot was started, 0 if nothing was listed yet.
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getAge() {
+            return System.currentTimeMillis() - timestamp;
+        }
+
+        public int size() {
+            return byId.size();
+        }
+
+        @CheckForNull
+        public ServerDetail get(String instanceId) {
+            return instanceId == null ? null : byId.get(instanceId);
+        }
+
+        public Collection<ServerDetail> getAll() {
+            return byId.values();
+        }
+
+        public List<ServerDetail> getByFingerprint(String fingerprint) {
+            return Collections.unmodifiableList(byFingerprint.getOrDefault(fingerprint, Collections.emptyList()));
+        }
+
+        public List<ServerDetail> getByStatus(String status) {
+            return Collections.unmodifiableList(byStatus.getOrDefault(status, Collections.emptyList()));
+        }
+    }
+
+    /**
+     * Keeps the inventory of every cloud fresh so that readers rarely list instances themselves.
+     */
+    @Extension
+    public static class RefreshWork extends AsyncPeriodicWork {
+        public RefreshWork() {
+            super("Huawei Cloud fleet inventory");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return REFRESH_INTERVAL;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            Set<String> withAgents = new HashSet<>();
+            for (Node node : Jenkins.get().getNodes()) {
+                if (node instanceof ECSAbstractSlave) {
+                    withAgents.add(((ECSAbstractSlave) node).cloudName);
+                }
+            }
+            for (Cloud c : Jenkins.get().clouds) {
+                if (c instanceof VPC) {
+                    VPC vpc = (VPC) c;
+                    if (!withAgents.contains(vpc.name) && vpc.getCapacityLedger().getReserved() == 0) {
+                        // nothing to retain nor to account for, the next provisioning lists on demand
+                        vpc.getStatistics().increment("inventory.refresh.skipped");
+                        continue;
+                    }
+                    try {
+                        vpc.getCapacityLedger().reconcile(vpc.getInventory().snapshot(REFRESH_INTERVAL / 2));
+                    } catch (SdkException e) {
+                        LOGGER.log(Level.WARNING, "Failed to refresh the inventory of " + c.name, e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+    }
+}
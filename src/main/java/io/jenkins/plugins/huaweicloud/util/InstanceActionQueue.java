@@ -0,0 +1,217 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import io.jenkins.plugins.huaweicloud.VPC;
+import jenkins.util.Timer;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the instances of a cloud to delete or stop over a short window and sends them as one
+ * {@code DeleteServers} or {@code BatchStopServers} request, instead of one request per agent.
+ * <p>
+ * The outcome of every instance is read from the sub jobs of the batch job by the {@link ECSJobTracker}. Instances
+ * failing for a reason {@link RetryPolicy#isRetryable} are queued again up to {@link #MAX_ATTEMPTS} times. A batch rejected as a whole for a reason other than
+ * throttling or an outage is split in halves, down to single instances, so that one bad instance doesn't fail or
+ * hold back the others. The future of an instance only completes once ECS confirmed the action, so that callers
+ * remove the Jenkins node after the instance is really gone.
+ */
+public class InstanceActionQueue {
+    private static final Logger LOGGER = Logger.getLogger(InstanceActionQueue.class.getName());
+
+    private static final long WINDOW = Long.getLong(InstanceActionQueue.class.getName() + ".WINDOW",
+            TimeUnit.SECONDS.toMillis(2));
+    private static final int MAX_BATCH = Integer.getInteger(InstanceActionQueue.class.getName() + ".MAX_BATCH", 100);
+    private static final int MAX_ATTEMPTS = Integer.getInteger(InstanceActionQueue.class.getName() + ".MAX_ATTEMPTS", 3);
+
+    public enum Action {
+        DELETE, STOP
+    }
+
+    private volatile VPC cloud;
+    private final CloudStatistics statistics;
+    private final long window;
+    private final Map<Action, Map<String, Request>> queued = new EnumMap<>(Action.class);
+    private final Map<Action, Boolean> scheduled = new EnumMap<>(Action.class);
+
+    public InstanceActionQueue(VPC cloud, CloudStatistics statistics) {
+        this(cloud, statistics, WINDOW);
+    }
+
+    InstanceActionQueue(VPC cloud, CloudStatistics statistics, long window) {
+        this.cloud = cloud;
+        this.statistics = statistics;
+        this.window = window;
+        for (Action action : Action.values()) {
+            queued.put(action, new LinkedHashMap<>());
+            scheduled.put(action, false);
+            statistics.gauge(metric(action, "queued"), () -> size(action));
+        }
+    }
+
+    public void setCloud(VPC cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * @return a future completed once ECS confirmed the deletion of the instance
+     */
+    public CompletableFuture<Void> delete(String instanceId) {
+        return enqueue(Action.DELETE, instanceId);
+    }
+
+    /**
+     * @return a future completed once ECS confirmed the instance is stopped
+     */
+    public CompletableFuture<Void> stop(String instanceId) {
+        return enqueue(Action.STOP, instanceId);
+    }
+
+    private synchronized CompletableFuture<Void> enqueue(Action action, String instanceId) {
+        Request request = queued.get(action).get(instanceId);
+        if (request == null) {
+            request = new Request(instanceId);
+            queued.get(action).put(instanceId, request);
+            statistics.increment(metric(action, "requests"));
+        }
+        schedule(action);
+        return request.future;
+    }
+
+    private synchronized void requeue(Action action, Request request) {
+        Request newer = queued.get(action).putIfAbsent(request.instanceId, request);
+        if (newer != null) {
+            // the instance was queued again meanwhile, both callers get the outcome of the newer request
+            newer.future.whenComplete((v, error) -> {
+                if (error != null) {
+                    request.future.completeExceptionally(error);
+                } else {
+                    request.future.complete(null);
+                }
+            });
+        }
+        schedule(action);
+    }
+
+    private synchronized int size(Action action) {
+        return queued.get(action).size();
+    }
+
+    private void schedule(Action action) {
+        if (!scheduled.get(action) && !queued.get(action).isEmpty()) {
+            scheduled.put(action, true);
+            Timer.get().schedule(() -> flush(action), window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flush(Action action) {
+        List<Request> batch = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Request> it = queued.get(action).values().iterator();
+            while (it.hasNext() && batch.size() < MAX_BATCH) {
+                batch.add(it.next());
+                it.remove();
+            }
+            scheduled.put(action, false);
+            schedule(action);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        send(action, batch);
+    }
+
+    private void send(Action action, List<Request> batch) {
+        List<String> ids = new ArrayList<>(batch.size());
+        for (Request request : batch) {
+            ids.add(request.instanceId);
+        }
+        statistics.increment(metric(action, "batches"));
+        CompletableFuture<String> job;
+        try {
+            job = submit(action, ids);
+        } catch (RuntimeException e) {
+            // such as the client failing to build, handled like a failed request
+            job = new CompletableFuture<>();
+            job.completeExceptionally(e);
+        }
+        job.whenComplete((jobId, e) -> {
+            if (e != null) {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                if (batch.size() > 1 && cause instanceof SdkException && !RetryPolicy.isRetryable((SdkException) cause)) {
+                    // the request was rejected, possibly for one of its instances: send each half on its own
+                    LOGGER.log(Level.FINE, "Splitting the " + action + " of ECS instances " + ids, cause);
+                    statistics.increment(metric(action, "splits"));
+                    send(action, batch.subList(0, batch.size() / 2));
+                    send(action, batch.subList(batch.size() / 2, batch.size()));
+                    return;
+                }
+                LOGGER.log(Level.WARNING, "Failed to " + action.name().toLowerCase(Locale.ENGLISH) + " ECS instances " + ids, cause);
+                for (Request request : batch) {
+                    retryOrFail(action, request, cause);
+                }
+                return;
+            }
+            LOGGER.log(Level.INFO, "Requested {0} of {1} ECS instances", new Object[]{action, ids.size()});
+            Map<String, CompletableFuture<Void>> outcomes = track(jobId, ids);
+            for (Request request : batch) {
+                outcomes.get(request.instanceId).whenComplete((v, error) -> {
+                    if (error != null) {
+                        retryOrFail(action, request, error);
+                        return;
+                    }
+                    if (action == Action.DELETE) {
+                        cloud.getInventory().remove(request.instanceId);
+                        cloud.getCapacityLedger().terminated(request.instanceId);
+                    }
+                    request.future.complete(null);
+                });
+            }
+        });
+    }
+
+    CompletableFuture<String> submit(Action action, List<String> ids) {
+        return action == Action.DELETE ? VPCAsyncHelper.deleteServers(ids, cloud) : VPCAsyncHelper.stopServers(ids, cloud);
+    }
+
+    Map<String, CompletableFuture<Void>> track(String jobId, List<String> ids) {
+        return cloud.getJobTracker().track(jobId, ids);
+    }
+
+    private void retryOrFail(Action action, Request request, Throwable error) {
+        boolean retryable = !(error instanceof SdkException) || RetryPolicy.isRetryable((SdkException) error);
+        if (retryable && ++request.attempts < MAX_ATTEMPTS) {
+            statistics.increment(metric(action, "retries"));
+            LOGGER.log(Level.FINE, "Retrying " + action + " of ECS instance " + request.instanceId, error);
+            requeue(action, request);
+        } else {
+            statistics.increment(metric(action, "failed"));
+            request.future.completeExceptionally(error);
+        }
+    }
+
+    private static String metric(Action action, String name) {
+        return "queue." + action.name().toLowerCase(Locale.ENGLISH) + "." + name;
+    }
+
+    private static final class Request {
+        private final String instanceId;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private int attempts;
+
+        Request(String instanceId) {
+            this.instanceId = instanceId;
+        }
+    }
+}
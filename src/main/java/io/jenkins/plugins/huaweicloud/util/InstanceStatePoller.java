@@ -0,0 +1,208 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.VPC;
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Waits for new instances of a cloud to become ACTIVE.
+ * <p>
+ * All the instances being waited for are resolved together with one listing per tick of the plugin instances still
+ * in BUILD, instead of one {@code showServer} call and one parked thread per instance. Only the instances that left
+ * BUILD since the previous tick are described one by one. An instance ECS does not know yet is given
+ * {@link #NOT_FOUND_GRACE} to show up, and an instance still in BUILD after the launch timeout of its agent, or
+ * {@link #BUILD_TIMEOUT} at most, is given up.
+ */
+public class InstanceStatePoller {
+    private static final Logger LOGGER = Logger.getLogger(InstanceStatePoller.class.getName());
+
+    private static final long INTERVAL = Long.getLong(InstanceStatePoller.class.getName() + ".INTERVAL",
+            TimeUnit.SECONDS.toMillis(5));
+    /* Ticks an instance may spend in a state other than BUILD or ACTIVE */
+    private static final int DESCRIBE_LIMIT = 2;
+    /* How long an instance may be missing from ECS before the wait fails */
+    private static final long NOT_FOUND_GRACE = Long.getLong(InstanceStatePoller.class.getName() + ".NOT_FOUND_GRACE",
+            TimeUnit.SECONDS.toMillis(30));
+    /* How long an instance may stay in BUILD when the launch timeout of its agent is longer */
+    private static final long BUILD_TIMEOUT = Long.getLong(InstanceStatePoller.class.getName() + ".BUILD_TIMEOUT",
+            TimeUnit.MINUTES.toMillis(30));
+
+    private volatile VPC cloud;
+    private final CloudStatistics statistics;
+    private final long interval;
+    private final ConcurrentMap<String, Waiter> waiters = new ConcurrentHashMap<>();
+    private boolean scheduled;
+
+    public InstanceStatePoller(VPC cloud, CloudStatistics statistics) {
+        this(cloud, statistics, INTERVAL);
+    }
+
+    InstanceStatePoller(VPC cloud, CloudStatistics statistics, long interval) {
+        this.cloud = cloud;
+        this.statistics = statistics;
+        this.interval = interval;
+        statistics.gauge("poller.waiting", waiters::size);
+    }
+
+    public void setCloud(VPC cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * @param timeout milliseconds the instance may stay in BUILD, up to {@link #BUILD_TIMEOUT}, 0 for the maximum
+     * @return a future completed with the instance once it is ACTIVE, or failed when it is not going to be
+     */
+    public CompletableFuture<ServerDetail> awaitRunning(String instanceId, long timeout) {
+        long limit = timeout > 0 ? Math.min(timeout, BUILD_TIMEOUT) : BUILD_TIMEOUT;
+        Waiter waiter = waiters.computeIfAbsent(instanceId, id -> new Waiter(id, limit));
+        schedule();
+        return waiter.future;
+    }
+
+    private synchronized void schedule() {
+        if (!scheduled && !waiters.isEmpty()) {
+            scheduled = true;
+            Timer.get().schedule(this::poll, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void poll() {
+        statistics.increment("poller.ticks");
+        try {
+            listBuilding().thenCompose(this::resolve).whenComplete((v, e) -> polled(e));
+        } catch (RuntimeException e) {
+            // such as the client failing to build, the next tick tries again
+            polled(e);
+        }
+    }
+
+    private CompletableFuture<Void> resolve(List<ServerDetail> servers) {
+        Set<String> building = new HashSet<>();
+        for (ServerDetail server : servers) {
+            building.add(server.getId());
+        }
+        List<CompletableFuture<?>> describes = new ArrayList<>();
+        for (Waiter waiter : waiters.values()) {
+            if (building.contains(waiter.instanceId)) {
+                if (waiter.building()) {
+                    waiters.remove(waiter.instanceId);
+                }
+                continue;
+            }
+            statistics.increment("poller.describes");
+            describes.add(describe(waiter.instanceId).handle((instance, error) -> {
+                if (error != null) {
+                    LOGGER.log(Level.FINE, "Failed to describe instance " + waiter.instanceId, error);
+                }
+                if (waiter.update(error == null ? instance : null)) {
+                    waiters.remove(waiter.instanceId);
+                }
+                return null;
+            }));
+        }
+        return CompletableFuture.allOf(describes.toArray(new CompletableFuture[0]));
+    }
+
+    private void polled(Throwable error) {
+        if (error != null) {
+            statistics.increment("poller.errors");
+            LOGGER.log(Level.FINE, "Failed to poll the instances of " + cloud.name, error);
+        }
+        synchronized (this) {
+            scheduled = false;
+            schedule();
+        }
+    }
+
+    CompletableFuture<List<ServerDetail>> listBuilding() {
+        return VPCAsyncHelper.getServerListByStatus(cloud, ECSTemplate.srvNamePrefix, "BUILD");
+    }
+
+    CompletableFuture<ServerDetail> describe(String instanceId) {
+        return VPCAsyncHelper.showServer(instanceId, cloud);
+    }
+
+    private final class Waiter {
+        private final String instanceId;
+        private final long since = System.currentTimeMillis();
+        private final long limit;
+        private final CompletableFuture<ServerDetail> future = new CompletableFuture<>();
+        private int retryCount;
+        private long missingSince;
+
+        Waiter(String instanceId, long limit) {
+            this.instanceId = instanceId;
+            this.limit = limit;
+        }
+
+        /**
+         * @return whether the waiter is done
+         */
+        synchronized boolean building() {
+            missingSince = 0;
+            return expired();
+        }
+
+        private boolean expired() {
+            long waited = System.currentTimeMillis() - since;
+            if (waited < limit) {
+                return false;
+            }
+            statistics.increment("poller.timeouts");
+            future.completeExceptionally(new IOException("Instance " + instanceId + " is still building after "
+                    + TimeUnit.MILLISECONDS.toSeconds(waited) + " seconds"));
+            return true;
+        }
+
+        /**
+         * @return whether the waiter is done
+         */
+        synchronized boolean update(ServerDetail instance) {
+            if (instance == null) {
+                long now = System.currentTimeMillis();
+                if (missingSince == 0) {
+                    missingSince = now;
+                }
+                if (now - missingSince >= NOT_FOUND_GRACE) {
+                    future.completeExceptionally(new IOException("Can't find instance with instance id " + instanceId));
+                    return true;
+                }
+                return false;
+            }
+            missingSince = 0;
+            String state = instance.getStatus();
+            if ("ACTIVE".equals(state)) {
+                statistics.recordTime("poller.wait", System.currentTimeMillis() - since);
+                cloud.getInventory().update(Collections.singletonList(instance));
+                future.complete(instance);
+                return true;
+            }
+            if (!"BUILD".equals(state)) {
+                if (retryCount >= DESCRIBE_LIMIT) {
+                    future.completeExceptionally(new IOException("Instance " + instanceId + " did not move to running after "
+                            + retryCount + " attempts, its state is " + state));
+                    return true;
+                }
+                LOGGER.log(Level.INFO, "Attempt {0}: instance {1} is neither pending, neither running, it''s {2}",
+                        new Object[]{retryCount, instanceId, state});
+                retryCount++;
+                return false;
+            }
+            return expired();
+        }
+    }
+}
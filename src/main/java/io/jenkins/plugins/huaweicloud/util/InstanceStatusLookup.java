@@ -0,0 +1,207 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.VPC;
+import jenkins.util.Timer;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Describes single instances of a cloud on behalf of computers, agents and launchers.
+ * <p>
+ * Answers no older than the requested age are served from the last answer or from the {@link FleetInventory}. The
+ * other lookups of an instance share the request already in flight. When at least {@link #LIST_THRESHOLD} ids are
+ * asked for within {@link #BATCH_WINDOW} they are resolved together with one listing of the plugin instances, and
+ * only the instances missing from the listing are described one by one. Fewer ids are described one by one, which
+ * is cheaper than listing the whole fleet. The calls go through the {@link VPCAsyncHelper}, only the callers of
+ * {@link #get} wait for them.
+ */
+public class InstanceStatusLookup {
+    private static final Logger LOGGER = Logger.getLogger(InstanceStatusLookup.class.getName());
+
+    /* Default freshness of the answers */
+    public static final long MAX_AGE = Long.getLong(InstanceStatusLookup.class.getName() + ".MAX_AGE",
+            TimeUnit.SECONDS.toMillis(5));
+    private static final long BATCH_WINDOW = Long.getLong(InstanceStatusLookup.class.getName() + ".BATCH_WINDOW", 100);
+    /* Number of ids from which a batch is resolved with a listing rather than one call per id */
+    private static final int LIST_THRESHOLD = Integer.getInteger(InstanceStatusLookup.class.getName() + ".LIST_THRESHOLD", 10);
+
+    private volatile VPC cloud;
+    private final CloudStatistics statistics;
+    private final ConcurrentMap<String, Answer> answers = new ConcurrentHashMap<>();
+    /* lookups waiting for the next batch and lookups sent to ECS, guarded by this */
+    private final Map<String, CompletableFuture<ServerDetail>> queued = new LinkedHashMap<>();
+    private final Map<String, CompletableFuture<ServerDetail>> sent = new HashMap<>();
+    private boolean scheduled;
+
+    public InstanceStatusLookup(VPC cloud, CloudStatistics statistics) {
+        this.cloud = cloud;
+        this.statistics = statistics;
+    }
+
+    public void setCloud(VPC cloud) {
+        this.cloud = cloud;
+    }
+
+    /**
+     * Describes the instance, with an answer at most {@link #MAX_AGE} old.
+     */
+    public ServerDetail get(String instanceId) throws SdkException, InterruptedException {
+        return get(instanceId, MAX_AGE);
+    }
+
+    /**
+     * Describes the instance, with an answer at most {@code maxAge} milliseconds old. Use 0 to always wait for a
+     * request sent after this call, possibly shared with other callers.
+     */
+    public ServerDetail get(String instanceId, long maxAge) throws SdkException, InterruptedException {
+        statistics.increment("lookup.requests");
+        long now = System.currentTimeMillis();
+        Answer answer = answers.get(instanceId);
+        if (answer != null && now - answer.time <= maxAge) {
+            statistics.increment("lookup.cached");
+            return answer.instance;
+        }
+        FleetInventory.Snapshot snapshot = cloud.getInventory().current();
+        if (snapshot.getTimestamp() != 0 && snapshot.getAge() <= maxAge && snapshot.get(instanceId) != null) {
+            statistics.increment("lookup.cached");
+            return snapshot.get(instanceId);
+        }
+        CompletableFuture<ServerDetail> future;
+        synchronized (this) {
+            future = queued.get(instanceId);
+            if (future == null && maxAge > 0) {
+                future = sent.get(instanceId);
+            }
+            if (future == null) {
+                future = new CompletableFuture<>();
+                queued.put(instanceId, future);
+                if (!scheduled) {
+                    scheduled = true;
+                    Timer.get().schedule(this::flush, BATCH_WINDOW, TimeUnit.MILLISECONDS);
+                }
+            } else {
+                statistics.increment("lookup.shared");
+            }
+        }
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof SdkException ? (SdkException) cause : new SdkException(cause);
+        }
+    }
+
+    private void flush() {
+        Map<String, CompletableFuture<ServerDetail>> batch;
+        synchronized (this) {
+            batch = new LinkedHashMap<>(queued);
+            queued.clear();
+            sent.putAll(batch);
+            scheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        answers.values().removeIf(a -> now - a.time > 10 * MAX_AGE);
+        CompletableFuture<Map<String, ServerDetail>> listing;
+        if (batch.size() >= LIST_THRESHOLD) {
+            statistics.increment("lookup.calls");
+            CompletableFuture<List<ServerDetail>> servers;
+            try {
+                servers = listServers();
+            } catch (RuntimeException e) {
+                servers = failed(e);
+            }
+            listing = servers.handle((listed, error) -> {
+                Map<String, ServerDetail> byId = new HashMap<>();
+                if (error != null) {
+                    LOGGER.log(Level.FINE, "Failed to list the instances of " + cloud.name, error);
+                    return byId;
+                }
+                for (ServerDetail server : listed) {
+                    byId.put(server.getId(), server);
+                }
+                cloud.getInventory().update(listed);
+                return byId;
+            });
+        } else {
+            listing = CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+        listing.whenComplete((listed, error) -> {
+            for (Map.Entry<String, CompletableFuture<ServerDetail>> e : batch.entrySet()) {
+                ServerDetail server = listed == null ? null : listed.get(e.getKey());
+                if (server != null) {
+                    complete(e.getKey(), e.getValue(), server, null);
+                } else {
+                    describe(e.getKey(), e.getValue());
+                }
+            }
+        });
+    }
+
+    private void describe(String instanceId, CompletableFuture<ServerDetail> future) {
+        statistics.increment("lookup.calls");
+        CompletableFuture<ServerDetail> call;
+        try {
+            call = showServer(instanceId);
+        } catch (RuntimeException e) {
+            // such as the client failing to build, the waiting callers get the error rather than wait forever
+            call = failed(e);
+        }
+        call.whenComplete((server, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            complete(instanceId, future, server, cause == null || cause instanceof SdkException ? (SdkException) cause : new SdkException(cause));
+        });
+    }
+
+    CompletableFuture<List<ServerDetail>> listServers() {
+        return VPCAsyncHelper.getServerListByName(cloud, ECSTemplate.srvNamePrefix);
+    }
+
+    CompletableFuture<ServerDetail> showServer(String instanceId) {
+        return VPCAsyncHelper.showServerWithRetry(instanceId, cloud);
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+
+    private void complete(String instanceId, CompletableFuture<ServerDetail> future, ServerDetail instance, SdkException error) {
+        synchronized (this) {
+            sent.remove(instanceId, future);
+        }
+        if (error != null) {
+            future.completeExceptionally(error);
+        } else {
+            answers.put(instanceId, new Answer(instance));
+            future.complete(instance);
+        }
+    }
+
+    private static final class Answer {
+        private final ServerDetail instance;
+        private final long time = System.currentTimeMillis();
+
+        Answer(ServerDetail instance) {
+            this.instance = instance;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.model.Queue;
+import jenkins.model.Jenkins;
+import jenkins.util.Timer;
+
+import javax.annotation.CheckForNull;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+
+/**
+ * Admits the SSH bootstraps of the agents of a cloud, at most {@code maxConcurrent} at a time, so that a burst of new
+ * agents doesn't run all its SSH handshakes and uploads on the controller at once.
+ * <p>
+ * Waiting launches are admitted in the order of the oldest buildable queue item each agent can run, so the builds
+ * that waited the longest get their agent first. While the heap use of the controller is above
+ * {@link #HEAP_THRESHOLD} or it runs more than {@link #THREAD_THRESHOLD} threads, no launch is admitted beyond the one
+ * already running. Admission completes a future rather than parking a thread, but Jenkins still has a remoting thread
+ * wait for each launch, so the launches waiting here are left out of the thread count, admitting them is what would
+ * relieve the controller. Queue depth and wait time are recorded as
+ * {@code launch.queued}, {@code launch.running}, {@code launch.wait} and {@code launch.duration}, and the launches
+ * that had to wait for the controller at least once as {@code launch.deferred}.
+ */
+public class LaunchScheduler {
+    public static final int DEFAULT_CONCURRENT = 20;
+
+    /* Share of the maximum heap in use above which launches are deferred, 0 disables the check */
+    private static final double HEAP_THRESHOLD = Double.parseDouble(System.getProperty(LaunchScheduler.class.getName() + ".HEAP_THRESHOLD", "0.85"));
+    /* Live threads of the controller above which launches are deferred, 0 disables the check */
+    private static final int THREAD_THRESHOLD = Integer.getInteger(LaunchScheduler.class.getName() + ".THREAD_THRESHOLD", 2000);
+    private static final long RECHECK_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private final CloudStatistics statistics;
+    private final IntSupplier maxConcurrent;
+    /* guarded by this */
+    private final PriorityQueue<Ticket> waiting = new PriorityQueue<>();
+    private int running;
+    private long sequence;
+    private boolean recheckScheduled;
+
+    /**
+     * @param maxConcurrent supplies the number of launches allowed to run at the same time, 0 for the default
+     */
+    public LaunchScheduler(CloudStatistics statistics, IntSupplier maxConcurrent) {
+        this.statistics = statistics;
+        this.maxConcurrent = maxConcurrent;
+        statistics.gauge("launch.queued", this::getQueued);
+        statistics.gauge("launch.running", this::getRunning);
+    }
+
+    public synchronized int getQueued() {
+        return waiting.size();
+    }
+
+    public synchronized int getRunning() {
+        return running;
+    }
+
+    /**
+     * Queues the launch of the agent.
+     *
+     * @return a future completed with the permit of the launch once it is admitted, to be closed when the launch is
+     * over. Cancelling it while it waits gives the launch up.
+     */
+    public CompletableFuture<Permit> admit(@CheckForNull Node node) {
+        return admit(oldestWaitingItem(node, System.currentTimeMillis()));
+    }
+
+    /**
+     * @param queuedSince launches are admitted from the smallest value
+     */
+    CompletableFuture<Permit> admit(long queuedSince) {
+        Ticket ticket = new Ticket(System.currentTimeMillis(), queuedSince);
+        synchronized (this) {
+            ticket.sequence = sequence++;
+            waiting.add(ticket);
+            dispatch();
+        }
+        ticket.admission.whenComplete((permit, error) -> {
+            if (error != null) {
+                synchronized (this) {
+                    waiting.remove(ticket);
+                }
+            }
+        });
+        return ticket.admission;
+    }
+
+    private synchronized void release() {
+        running--;
+        dispatch();
+    }
+
+    private void dispatch() {
+        int limit = maxConcurrent.getAsInt() > 0 ? maxConcurrent.getAsInt() : DEFAULT_CONCURRENT;
+        while (!waiting.isEmpty() && running < limit) {
+            // one launch always proceeds, the controller being busy is no reason to starve the cloud
+            if (running > 0 && isOverloaded(waiting.size())) {
+                for (Ticket ticket : waiting) {
+                    if (!ticket.deferred) {
+                        ticket.deferred = true;
+                        statistics.increment("launch.deferred");
+                    }
+                }
+                if (!recheckScheduled) {
+                    recheckScheduled = true;
+                    Timer.get().schedule(this::recheck, RECHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                }
+                break;
+            }
+            Ticket ticket = waiting.poll();
+            long admitted = System.currentTimeMillis();
+            // a launch given up meanwhile gets no permit and leaves its slot to the next one
+            if (ticket.admission.complete(new Permit(admitted))) {
+                running++;
+                statistics.recordTime("launch.wait", admitted - ticket.start);
+            }
+        }
+    }
+
+    private synchronized void recheck() {
+        recheckScheduled = false;
+        dispatch();
+    }
+
+    /**
+     * @param parked threads waiting for admission, not counted against {@link #THREAD_THRESHOLD}
+     */
+    private static boolean isOverloaded(int parked) {
+        if (HEAP_THRESHOLD > 0) {
+            MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+            long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+            if (heap.getUsed() > HEAP_THRESHOLD * max) {
+                return true;
+            }
+        }
+        return THREAD_THRESHOLD > 0 && ManagementFactory.getThreadMXBean().getThreadCount() - parked > THREAD_THRESHOLD;
+    }
+
+    /**
+     * @return since when the oldest buildable item the agent can run has been waiting, or {@code otherwise}
+     */
+    private static long oldestWaitingItem(@CheckForNull Node node, long otherwise) {
+        long oldest = otherwise;
+        if (node == null) {
+            return oldest;
+        }
+        for (Queue.BuildableItem item : Jenkins.get().getQueue().getBuildableItems()) {
+            Label label = item.getAssignedLabel();
+            boolean runsOn = label == null ? node.getMode() == Node.Mode.NORMAL : label.matches(node);
+            if (runsOn) {
+                oldest = Math.min(oldest, item.getInQueueSince());
+            }
+        }
+        return oldest;
+    }
+
+    private static final class Ticket implements Comparable<Ticket> {
+        private final long start;
+        private final long queuedSince;
+        private final CompletableFuture<Permit> admission = new CompletableFuture<>();
+        private long sequence;
+        private boolean deferred;
+
+        Ticket(long start, long queuedSince) {
+            this.start = start;
+            this.queuedSince = queuedSince;
+        }
+
+        @Override
+        public int compareTo(Ticket o) {
+            int c = Long.compare(queuedSince, o.queuedSince);
+            return c != 0 ? c : Long.compare(sequence, o.sequence);
+        }
+    }
+
+    public final class Permit implements AutoCloseable {
+        private final long admitted;
+        private boolean closed;
+
+        private Permit(long admitted) {
+            this.admitted = admitted;
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                statistics.recordTime("launch.duration", System.currentTimeMillis() - admitted);
+                release();
+            }
+        }
+    }
+}
@@ -1,9 +1,13 @@
 package io.jenkins.plugins.huaweicloud.util;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
 import hudson.model.Computer;
 import hudson.model.Label;
 import hudson.model.Queue;
+import hudson.model.TaskListener;
+import io.jenkins.plugins.huaweicloud.ECSAbstractSlave;
 import io.jenkins.plugins.huaweicloud.ECSComputer;
 import io.jenkins.plugins.huaweicloud.ECSTemplate;
 import io.jenkins.plugins.huaweicloud.VPC;
@@ -11,102 +15,156 @@ import jenkins.model.Jenkins;
 import org.kohsuke.accmod.Restricted;
 import org.kohsuke.accmod.restrictions.NoExternalUse;
 
-import javax.annotation.Nonnull;
 import java.time.Clock;
-import java.util.Arrays;
-import java.util.Objects;
-import java.util.function.Function;
-import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.stream.Collectors;
 
 @Restricted(NoExternalUse.class)
 public class MinimumInstanceChecker {
     @SuppressFBWarnings(value = "MS_SHOULD_BE_FINAL", justification = "Needs to be overridden from tests")
     public static Clock clock = Clock.systemDefaultZone();
 
-    private static Stream<Computer> agentsForTemplate(@Nonnull ECSTemplate agentTemplate) {
-        return (Stream<Computer>) Arrays.stream(Jenkins.get().getComputers())
-                .filter(computer -> computer instanceof ECSComputer)
-                .filter(computer -> {
-                    ECSTemplate computerTemplate = ((ECSComputer) computer).getSlaveTemplate();
-                    return computerTemplate != null
-                            && Objects.equals(computerTemplate.description, agentTemplate.description);
-                });
-    }
+    /**
+     * Provisions the agents missing to reach the minimum number of instances of every template, counting the agents,
+     * spare agents, provisioning agents and waiting builds of all the templates in one pass over the computers and one
+     * pass over the buildable items. Templates without an active minimum are left to the provisioning strategies, and
+     * the instances already reserved on the {@link CapacityLedger} of a cloud count as coming agents.
+     */
+    public static void checkForMinimumInstances() {
+        List<ECSTemplate> templates = new ArrayList<>();
+        Jenkins.get().clouds.stream()
+                .filter(cloud -> cloud instanceof VPC)
+                .forEach(cloud -> templates.addAll(((VPC) cloud).getTemplates()));
+        if (templates.isEmpty()) {
+            return;
+        }
+        Map<ECSTemplate, TemplateCounts> counts = countAll(templates);
+        for (ECSTemplate agentTemplate : templates) {
+            if (!agentTemplate.isMinimumInstancesActive(clock.millis())) {
+                continue;
+            }
+            int requiredMinAgents = agentTemplate.getMinimumNumberOfInstances();
+            int requiredMinSpareAgents = agentTemplate.getMinimumNumberOfSpareInstances();
+            if (requiredMinAgents <= 0 && requiredMinSpareAgents <= 0) {
+                continue;
+            }
+            TemplateCounts current = counts.get(agentTemplate);
+            // planned nodes hold their reservation until their instance is created
+            int inFlight = agentTemplate.getParent().getCapacityLedger().getReserved(agentTemplate.getFingerprint());
+            int provisionForMinAgents = 0;
+            int provisionForMinSpareAgents = 0;
 
-    public static int countCurrentNumberOfAgents(@Nonnull ECSTemplate agentTemplate) {
-        return (int) agentsForTemplate(agentTemplate).count();
-    }
+            // Check if we need to provision any agents because we  don't have the minimum number of agents
+            provisionForMinAgents = requiredMinAgents - (current.agents + inFlight);
+            if (provisionForMinAgents < 0) {
+                provisionForMinAgents = 0;
+            }
+
+            // Check if we need to provision any agents because we don't have the minimum number of spare agents.
+            // Don't double provision if minAgents and minSpareAgents are set.
+            provisionForMinSpareAgents = (requiredMinSpareAgents + current.waitingBuilds) - (current.spareAgents +
+                    provisionForMinAgents + current.provisioningAgents + inFlight);
+            if (provisionForMinSpareAgents < 0) {
+                provisionForMinSpareAgents = 0;
+            }
 
-    public static int countCurrentNumberOfSpareAgents(@Nonnull ECSTemplate agentTemplate) {
-        return (int) agentsForTemplate(agentTemplate)
-                .filter(computer -> computer.countBusy() == 0)
-                .filter(Computer::isOnline)
-                .count();
+            int numberToProvision = provisionForMinAgents + provisionForMinSpareAgents;
+            if (numberToProvision > 0) {
+                agentTemplate.getParent().provision(agentTemplate, numberToProvision);
+            }
+        }
     }
 
-    public static int countCurrentNumberOfProvisioningAgents(@Nonnull ECSTemplate agentTemplate) {
-        return (int) agentsForTemplate(agentTemplate)
-                .filter(computer -> computer.countBusy() == 0)
-                .filter(Computer::isOffline)
-                .filter(Computer::isConnecting)
-                .count();
+    /**
+     * Counts the agents, spare agents, provisioning agents and waiting builds of all the given templates at once. The
+     * computers are matched to their template through the template index of their cloud, and each distinct label of
+     * the queue is matched against the templates only once.
+     */
+    static Map<ECSTemplate, TemplateCounts> countAll(List<ECSTemplate> templates) {
+        Map<ECSTemplate, TemplateCounts> counts = new IdentityHashMap<>();
+        Map<String, VPC> clouds = new HashMap<>();
+        for (ECSTemplate t : templates) {
+            counts.put(t, new TemplateCounts());
+            clouds.putIfAbsent(t.getParent().name, t.getParent());
+        }
+        Map<String, FleetInventory.Snapshot> snapshots = new HashMap<>();
+        for (Computer computer : Jenkins.get().getComputers()) {
+            if (!(computer instanceof ECSComputer)) {
+                continue;
+            }
+            ECSAbstractSlave node = ((ECSComputer) computer).getNode();
+            VPC cloud = node == null ? null : clouds.get(node.cloudName);
+            if (cloud == null) {
+                continue;
+            }
+            FleetInventory.Snapshot snapshot = snapshots.computeIfAbsent(cloud.name, k -> cloud.getInventory().current());
+            TemplateCounts c = counts.get(cloud.getTemplate(node, snapshot.get(node.getInstanceId())));
+            if (c == null) {
+                continue;
+            }
+            c.agents++;
+            if (computer.countBusy() == 0) {
+                if (computer.isOnline()) {
+                    c.spareAgents++;
+                } else if (computer.isConnecting()) {
+                    c.provisioningAgents++;
+                }
+            }
+        }
+        Map<Label, List<ECSTemplate>> byLabel = new HashMap<>();
+        for (Queue.BuildableItem item : Queue.getInstance().getBuildableItems()) {
+            Label label = item.getAssignedLabel();
+            if (label == null) {
+                continue;
+            }
+            List<ECSTemplate> matching = byLabel.computeIfAbsent(label, l -> templates.stream()
+                    .filter(t -> l.matches(t.getLabelSet()))
+                    .collect(Collectors.toList()));
+            for (ECSTemplate t : matching) {
+                counts.get(t).waitingBuilds++;
+            }
+        }
+        return counts;
     }
 
-    /*
-        Get the number of queued builds that match an AMI (agentTemplate)
-    */
-    public static int countQueueItemsForAgentTemplate(@Nonnull ECSTemplate agentTemplate) {
-        return (int)
-                Queue
-                        .getInstance()
-                        .getBuildableItems()
-                        .stream()
-                        .map((Function<Queue.Item, Label>) Queue.Item::getAssignedLabel)
-                        .filter(Objects::nonNull)
-                        .filter((Label label) -> label.matches(agentTemplate.getLabelSet()))
-                        .count();
+    static final class TemplateCounts {
+        int agents;
+        int spareAgents;
+        int provisioningAgents;
+        int waitingBuilds;
     }
 
-    public static void checkForMinimumInstances() {
-        Jenkins.get().clouds.stream()
-                .filter(cloud -> cloud instanceof VPC)
-                .map(cloud -> (VPC) cloud)
-                .forEach(cloud -> {
-                    cloud.getTemplates().forEach(agentTemplate -> {
-                        /*TODO: Minimum instances now have a time range, check to see  if we are within that time range and return early if not.
-                        if (! minimumInstancesActive(agentTemplate.getMinimumNumberOfInstancesTimeRangeConfig())) {
-                            return;
-                        }*/
-                        int requiredMinAgents = agentTemplate.getMinimumNumberOfInstances();
-                        //int requiredMinSpareAgents = agentTemplate.getMinimumNumberOfSpareInstances();
-                        int requiredMinSpareAgents = 0;
-                        int currentNumberOfAgentsForTemplate = countCurrentNumberOfAgents(agentTemplate);
-                        int currentNumberOfSpareAgentsForTemplate = countCurrentNumberOfSpareAgents(agentTemplate);
-                        int currentNumberOfProvisioningAgentsForTemplate = countCurrentNumberOfProvisioningAgents(agentTemplate);
-                        int currentBuildsWaitingForTemplate = countQueueItemsForAgentTemplate(agentTemplate);
-                        int provisionForMinAgents = 0;
-                        int provisionForMinSpareAgents = 0;
+    /**
+     * Runs {@link #checkForMinimumInstances()} periodically.
+     */
+    @Extension
+    public static class CheckWork extends AsyncPeriodicWork {
+        private static final long RECURRENCE = Long.getLong(MinimumInstanceChecker.class.getName() + ".RECURRENCE",
+                TimeUnit.MINUTES.toMillis(1));
 
-                        // Check if we need to provision any agents because we  don't have the minimum number of agents
-                        provisionForMinAgents = requiredMinAgents - currentNumberOfAgentsForTemplate;
-                        if (provisionForMinAgents < 0) {
-                            provisionForMinAgents = 0;
-                        }
+        public CheckWork() {
+            super("Huawei Cloud minimum instances");
+        }
 
-                        // Check if we need to provision any agents because we don't have the minimum number of spare agents.
-                        // Don't double provision if minAgents and minSpareAgents are set.
-                        provisionForMinSpareAgents = (requiredMinSpareAgents + currentBuildsWaitingForTemplate) - (currentNumberOfSpareAgentsForTemplate +
-                                provisionForMinAgents + currentNumberOfProvisioningAgentsForTemplate);
-                        if (provisionForMinSpareAgents < 0) {
-                            provisionForMinSpareAgents = 0;
-                        }
+        @Override
+        public long getRecurrencePeriod() {
+            return RECURRENCE;
+        }
 
-                        int numberToProvision = provisionForMinAgents + provisionForMinSpareAgents;
-                        if (numberToProvision > 0) {
-                            cloud.provision(agentTemplate, numberToProvision);
-                        }
-                    });
-                });
-    }
+        @Override
+        protected void execute(TaskListener listener) {
+            checkForMinimumInstances();
+        }
 
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+    }
 }
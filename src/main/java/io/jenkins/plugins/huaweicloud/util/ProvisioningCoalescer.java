@@ -0,0 +1,109 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import io.jenkins.plugins.huaweicloud.ECSAbstractSlave;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import jenkins.util.Timer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Merges the provisioning requests made for the same template within a short window into one request, so that a
+ * stream of small demands from many labels or ticks results in one create job instead of many 1 or 2 instance jobs.
+ * The instances of the merged request are handed back to the original requests in order.
+ */
+public class ProvisioningCoalescer {
+    private static final Logger LOGGER = Logger.getLogger(ProvisioningCoalescer.class.getName());
+    public static final int MAX_WINDOW = 10000;
+
+    private final CloudStatistics statistics;
+    private final IntSupplier window;
+    private final Map<ECSTemplate, List<CompletableFuture<ECSAbstractSlave>>> batches = new HashMap<>();
+
+    /**
+     * @param window supplies the current window length in milliseconds, 0 disables merging
+     */
+    public ProvisioningCoalescer(CloudStatistics statistics, IntSupplier window) {
+        this.statistics = statistics;
+        this.window = window;
+        statistics.gauge("provision.window", () -> window.getAsInt() + "ms");
+    }
+
+    /**
+     * @return one future per requested instance, completed once the merged request has provided its instance
+     */
+    public List<CompletableFuture<ECSAbstractSlave>> request(ECSTemplate t, int number) {
+        List<CompletableFuture<ECSAbstractSlave>> slots = new ArrayList<>(number);
+        for (int i = 0; i < number; i++) {
+            slots.add(new CompletableFuture<>());
+        }
+        statistics.increment("provision.coalesced.requests");
+        int delay = Math.min(Math.max(window.getAsInt(), 0), MAX_WINDOW);
+        if (delay == 0) {
+            ECSExecutors.provisioning().execute(() -> provision(t, slots));
+            return slots;
+        }
+        synchronized (batches) {
+            List<CompletableFuture<ECSAbstractSlave>> batch = batches.get(t);
+            if (batch == null) {
+                batch = new ArrayList<>();
+                batches.put(t, batch);
+                Timer.get().schedule(() -> flush(t), delay, TimeUnit.MILLISECONDS);
+            }
+            batch.addAll(slots);
+        }
+        return slots;
+    }
+
+    private void flush(ECSTemplate t) {
+        List<CompletableFuture<ECSAbstractSlave>> batch;
+        synchronized (batches) {
+            batch = batches.remove(t);
+        }
+        if (batch != null) {
+            ECSExecutors.provisioning().execute(() -> provision(t, batch));
+        }
+    }
+
+    private void provision(ECSTemplate t, List<CompletableFuture<ECSAbstractSlave>> slots) {
+        statistics.increment("provision.coalesced.batches");
+        statistics.add("provision.coalesced.instances", slots.size());
+        List<CompletableFuture<ECSAbstractSlave>> slaves;
+        try {
+            slaves = provisionAsync(t, slots.size());
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, t + ". Exception during provisioning", e);
+            for (CompletableFuture<ECSAbstractSlave> slot : slots) {
+                slot.completeExceptionally(e);
+            }
+            return;
+        }
+        for (int i = 0; i < slots.size(); i++) {
+            CompletableFuture<ECSAbstractSlave> slot = slots.get(i);
+            if (slaves == null || i >= slaves.size()) {
+                slot.completeExceptionally(new IOException("ECS did not return an instance for " + t));
+                continue;
+            }
+            slaves.get(i).whenComplete((slave, error) -> {
+                if (error != null) {
+                    slot.completeExceptionally(error);
+                } else {
+                    slot.complete(slave);
+                }
+            });
+        }
+    }
+
+    List<CompletableFuture<ECSAbstractSlave>> provisionAsync(ECSTemplate t, int number) throws IOException {
+        return t.provisionAsync(number, EnumSet.of(ECSTemplate.ProvisionOptions.ALLOW_CREATE));
+    }
+}
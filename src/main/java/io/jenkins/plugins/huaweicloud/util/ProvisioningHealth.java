@@ -0,0 +1,59 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Recent outcome of the nodes planned by a cloud: a moving average of the time from planning a node to its instance
+ * running, and of the share of planned nodes that failed. Shown as {@code provision.latency} and
+ * {@code provision.failure_rate}, and used to weigh the clouds a burst of demand is spread across.
+ */
+public class ProvisioningHealth {
+    /* Weight of the latest outcome in the averages */
+    private static final double ALPHA = 0.2;
+    /* Floor of the health factor, so that a failing cloud still gets a share and can show it recovered */
+    private static final double MIN_HEALTH = 0.05;
+    /* Latency at which the weight of a cloud is halved */
+    private static final long REFERENCE_LATENCY = Long.getLong(ProvisioningHealth.class.getName() + ".REFERENCE_LATENCY",
+            TimeUnit.MINUTES.toMillis(2));
+
+    /* guarded by this */
+    private double latency = -1;
+    private double failureRate;
+
+    public ProvisioningHealth(CloudStatistics statistics) {
+        statistics.gauge("provision.latency", this::getLatency);
+        statistics.gauge("provision.failure_rate", this::getFailureRate);
+    }
+
+    public synchronized String getLatency() {
+        return latency < 0 ? "-" : Math.round(latency) + "ms";
+    }
+
+    public synchronized String getFailureRate() {
+        return Math.round(failureRate * 100) + "%";
+    }
+
+    /**
+     * Records the outcome of a planned node.
+     *
+     * @param millis time from planning the node to its instance running, only meaningful on success
+     */
+    public synchronized void record(boolean success, long millis) {
+        failureRate += ALPHA * ((success ? 0 : 1) - failureRate);
+        if (success) {
+            latency = latency < 0 ? millis : latency + ALPHA * (millis - latency);
+        }
+    }
+
+    /**
+     * @param remaining executors the cloud can still add, up to the demand to spread
+     * @return the share of demand the cloud should get relative to other clouds, 0 when it should get none
+     */
+    public synchronized double weight(int remaining) {
+        if (remaining <= 0) {
+            return 0;
+        }
+        double speed = latency < 0 ? 1 : (double) REFERENCE_LATENCY / (REFERENCE_LATENCY + latency);
+        return remaining * speed * Math.max(1 - failureRate, MIN_HEALTH);
+    }
+}
@@ -0,0 +1,137 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import jenkins.util.Timer;
+
+import javax.annotation.CheckForNull;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Retries ECS calls failing for a transient reason with an exponential backoff and full jitter, so that the threads
+ * of a controller don't retry in lockstep during an outage. Failures of the endpoint itself are reported to a
+ * {@link CircuitBreaker}, which makes the calls fail fast while it is open.
+ */
+public final class RetryPolicy {
+    /* Describing instances, up to about 15s of waiting */
+    public static final RetryPolicy DESCRIBE = new RetryPolicy(5, 1000, 8000);
+    /* Submitting create jobs */
+    public static final RetryPolicy SUBMIT = new RetryPolicy(3, 2000, 10000);
+
+    private final int attempts;
+    private final long baseDelay;
+    private final long maxDelay;
+
+    public RetryPolicy(int attempts, long baseDelay, long maxDelay) {
+        this.attempts = attempts;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * @return a random delay before the retry following the given 0-based attempt, between 0 and the exponential
+     * ceiling
+     */
+    public long delay(int attempt) {
+        long ceiling = Math.min(maxDelay, baseDelay << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(0, ceiling + 1);
+    }
+
+    public <T> T call(Supplier<T> call, @CheckForNull CircuitBreaker breaker) throws SdkException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            if (breaker != null && !breaker.allowRequest()) {
+                throw new SdkException("ECS calls to " + breaker.getKey() + " are suspended after repeated failures");
+            }
+            try {
+                T result = call.get();
+                report(breaker, null);
+                return result;
+            } catch (SdkException e) {
+                report(breaker, e);
+                if (!isRetryable(e) || attempt + 1 >= attempts) {
+                    throw e;
+                }
+                Thread.sleep(delay(attempt));
+            } catch (RuntimeException e) {
+                report(breaker, e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Asynchronous variant of {@link #call}, the retries are scheduled on the {@link Timer} instead of sleeping.
+     */
+    public <T> CompletableFuture<T> callAsync(Supplier<CompletableFuture<T>> call, @CheckForNull CircuitBreaker breaker) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        attemptAsync(call, breaker, 0, result);
+        return result;
+    }
+
+    private <T> void attemptAsync(Supplier<CompletableFuture<T>> call, @CheckForNull CircuitBreaker breaker, int attempt,
+                                  CompletableFuture<T> result) {
+        if (breaker != null && !breaker.allowRequest()) {
+            result.completeExceptionally(new SdkException("ECS calls to " + breaker.getKey() + " are suspended after repeated failures"));
+            return;
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((value, error) -> {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            report(breaker, cause);
+            if (cause == null) {
+                result.complete(value);
+            } else if (cause instanceof SdkException && isRetryable((SdkException) cause) && attempt + 1 < attempts) {
+                Timer.get().schedule(() -> attemptAsync(call, breaker, attempt + 1, result), delay(attempt), TimeUnit.MILLISECONDS);
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+    }
+
+    /* an answer from ECS, even an error, shows the endpoint is up */
+    private static void report(@CheckForNull CircuitBreaker breaker, @CheckForNull Throwable error) {
+        if (breaker == null) {
+            return;
+        }
+        if (error == null || error instanceof SdkException && !isOutage((SdkException) error)) {
+            breaker.success();
+        } else {
+            breaker.failure();
+        }
+    }
+
+    /**
+     * Throttling, server errors and failures to reach ECS are worth retrying, other errors are not.
+     */
+    public static boolean isRetryable(SdkException e) {
+        if (e instanceof ServiceResponseException) {
+            int status = ((ServiceResponseException) e).getHttpStatusCode();
+            return status == 429 || status >= 500 || ApiRateLimiter.isThrottling((ServiceResponseException) e);
+        }
+        return true;
+    }
+
+    /**
+     * Server errors and failures to reach ECS, as opposed to throttling or errors about the request.
+     */
+    public static boolean isOutage(SdkException e) {
+        if (e instanceof ServiceResponseException) {
+            return ((ServiceResponseException) e).getHttpStatusCode() >= 500;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,53 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of locks shared by keys hashed onto them, so that work on different templates of a cloud runs
+ * concurrently while work on the same template is serialized. The time spent waiting for and holding a lock is
+ * recorded as {@code <name>.wait} and {@code <name>.hold}.
+ */
+public class StripedLocks {
+    private static final int STRIPES = Integer.getInteger(StripedLocks.class.getName() + ".STRIPES", 16);
+
+    private final ReentrantLock[] locks;
+    private final CloudStatistics statistics;
+    private final String name;
+
+    public StripedLocks(CloudStatistics statistics, String name) {
+        this.locks = new ReentrantLock[Math.max(STRIPES, 1)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        this.statistics = statistics;
+        this.name = name;
+    }
+
+    /**
+     * Locks the stripe of the key, to be used in a try-with-resources statement.
+     */
+    public Hold acquire(String key) {
+        ReentrantLock lock = locks[(key.hashCode() & Integer.MAX_VALUE) % locks.length];
+        long start = System.currentTimeMillis();
+        lock.lock();
+        long acquired = System.currentTimeMillis();
+        statistics.recordTime(name + ".wait", acquired - start);
+        return new Hold(lock, acquired);
+    }
+
+    public final class Hold implements AutoCloseable {
+        private final ReentrantLock lock;
+        private final long acquired;
+
+        private Hold(ReentrantLock lock, long acquired) {
+            this.lock = lock;
+            this.acquired = acquired;
+        }
+
+        @Override
+        public void close() {
+            lock.unlock();
+            statistics.recordTime(name + ".hold", System.currentTimeMillis() - acquired);
+        }
+    }
+}
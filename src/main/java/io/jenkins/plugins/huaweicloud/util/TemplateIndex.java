@@ -0,0 +1,102 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.model.Label;
+import hudson.model.Node;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+
+import javax.annotation.CheckForNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lookups of the templates of a cloud by description, by the fingerprint of their instances and by label, built once
+ * per configuration of the cloud so that the provisioning and retention paths don't scan the templates on every call.
+ * <p>
+ * The templates matching a label are computed the first time the label is looked up and kept until the next
+ * configuration, labels are interned by Jenkins and their number stays small. When a template is edited the cloud is
+ * configured again and a new index replaces this one.
+ */
+public final class TemplateIndex {
+    /* Bound on the labels kept, the cache starts over beyond it */
+    private static final int MAX_LABELS = 1000;
+
+    private final List<ECSTemplate> templates;
+    private final Map<String, ECSTemplate> byDescription;
+    private final Map<String, ECSTemplate> byFingerprint;
+    private final List<ECSTemplate> unlabeled;
+    private final ConcurrentMap<String, List<ECSTemplate>> byLabel = new ConcurrentHashMap<>();
+
+    public TemplateIndex(List<? extends ECSTemplate> templates) {
+        this.templates = Collections.unmodifiableList(new ArrayList<>(templates));
+        Map<String, ECSTemplate> descriptions = new HashMap<>();
+        Map<String, ECSTemplate> fingerprints = new HashMap<>();
+        List<ECSTemplate> normal = new ArrayList<>();
+        for (ECSTemplate t : this.templates) {
+            // the first template wins, as with the scan it replaces
+            descriptions.putIfAbsent(t.description, t);
+            fingerprints.putIfAbsent(t.getFingerprint(), t);
+            if (t.getMode() == Node.Mode.NORMAL) {
+                normal.add(t);
+            }
+        }
+        this.byDescription = descriptions;
+        this.byFingerprint = fingerprints;
+        this.unlabeled = Collections.unmodifiableList(normal);
+    }
+
+    public List<ECSTemplate> getTemplates() {
+        return templates;
+    }
+
+    @CheckForNull
+    public ECSTemplate getByDescription(String description) {
+        return byDescription.get(description);
+    }
+
+    @CheckForNull
+    public ECSTemplate getByFingerprint(@CheckForNull String fingerprint) {
+        return fingerprint == null ? null : byFingerprint.get(fingerprint);
+    }
+
+    /**
+     * @return the template the instance was created from, according to its fingerprint tag or name
+     */
+    @CheckForNull
+    public ECSTemplate getByInstance(ServerDetail instance) {
+        return getByFingerprint(FleetInventory.fingerprintOf(instance));
+    }
+
+    /**
+     * @return the templates that can run builds of the label, in configuration order: the normal mode templates for
+     * builds without a label, otherwise the templates whose labels match it
+     */
+    public List<ECSTemplate> getByLabel(@CheckForNull Label label) {
+        if (label == null) {
+            return unlabeled;
+        }
+        List<ECSTemplate> matching = byLabel.get(label.getExpression());
+        if (matching == null) {
+            if (byLabel.size() >= MAX_LABELS) {
+                byLabel.clear();
+            }
+            matching = byLabel.computeIfAbsent(label.getExpression(), k -> match(label));
+        }
+        return matching;
+    }
+
+    private List<ECSTemplate> match(Label label) {
+        List<ECSTemplate> matching = new ArrayList<>();
+        for (ECSTemplate t : templates) {
+            if (label.matches(t.getLabelSet())) {
+                matching.add(t);
+            }
+        }
+        return Collections.unmodifiableList(matching);
+    }
+}
@@ -0,0 +1,182 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.ecs.v2.EcsAsyncClient;
+import com.huaweicloud.sdk.ecs.v2.model.*;
+import io.jenkins.plugins.huaweicloud.VPC;
+import io.jenkins.plugins.huaweicloud.util.ApiRateLimiter.Family;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking counterparts of the {@link VPCHelper} calls, on the {@link EcsAsyncClient} of the cloud, so that
+ * following jobs, listing instances and submitting batches don't park a thread for every request in flight.
+ * <p>
+ * The futures fail with the {@link com.huaweicloud.sdk.core.exception.SdkException} of the call, possibly wrapped in a
+ * {@link java.util.concurrent.CompletionException}. The blocking calls of {@link VPCHelper} describing instances and
+ * managing their tags wait on the futures of this class.
+ */
+public class VPCAsyncHelper {
+
+    /**
+     * @return the id of the ECS job creating the servers
+     */
+    public static CompletableFuture<String> createServers(VPC vpc, CreatePostPaidServersRequest request) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        return vpc.getRateLimiter().callAsync(Family.CREATE, () -> client.createPostPaidServersAsync(request))
+                .thenApply(CreatePostPaidServersResponse::getJobId);
+    }
+
+    /**
+     * @return the id of the ECS job deleting the servers with their public ips and volumes
+     */
+    public static CompletableFuture<String> deleteServers(List<String> instances, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        DeleteServersRequest request = VPCHelper.deleteServersRequest(instances);
+        return vpc.getRateLimiter().callAsync(Family.DELETE, () -> client.deleteServersAsync(request))
+                .thenApply(DeleteServersResponse::getJobId);
+    }
+
+    /**
+     * @return the id of the ECS job soft stopping the servers
+     */
+    public static CompletableFuture<String> stopServers(List<String> instances, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        BatchStopServersRequest request = VPCHelper.stopServersRequest(instances);
+        return vpc.getRateLimiter().callAsync(Family.START_STOP, () -> client.batchStopServersAsync(request))
+                .thenApply(BatchStopServersResponse::getJobId);
+    }
+
+    /**
+     * @return the id of the ECS job starting the servers
+     */
+    public static CompletableFuture<String> startServers(List<String> instances, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        BatchStartServersRequest request = VPCHelper.startServersRequest(instances);
+        return vpc.getRateLimiter().callAsync(Family.START_STOP, () -> client.batchStartServersAsync(request))
+                .thenApply(BatchStartServersResponse::getJobId);
+    }
+
+    public static CompletableFuture<ServerDetail> showServer(String instanceId, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        ShowServerRequest request = new ShowServerRequest().withServerId(instanceId);
+        return vpc.getRateLimiter().callAsync(Family.DESCRIBE, () -> client.showServerAsync(request))
+                .thenApply(ShowServerResponse::getServer);
+    }
+
+    /**
+     * Describes the instance, retrying transient failures as {@link RetryPolicy#DESCRIBE} does.
+     */
+    public static CompletableFuture<ServerDetail> showServerWithRetry(String instanceId, VPC vpc) {
+        return RetryPolicy.DESCRIBE.callAsync(() -> showServer(instanceId, vpc), vpc.getCircuitBreaker(null));
+    }
+
+    public static CompletableFuture<List<ServerTag>> getServerTags(String instanceId, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        ShowServerTagsRequest request = new ShowServerTagsRequest().withServerId(instanceId);
+        return vpc.getRateLimiter().callAsync(Family.TAGS, () -> client.showServerTagsAsync(request))
+                .thenApply(ShowServerTagsResponse::getTags);
+    }
+
+    public static CompletableFuture<Void> deleteServerTags(String instanceId, List<ServerTag> tags, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        BatchDeleteServerTagsRequestBody body = new BatchDeleteServerTagsRequestBody().withTags(tags)
+                .withAction(BatchDeleteServerTagsRequestBody.ActionEnum.fromValue("delete"));
+        BatchDeleteServerTagsRequest request = new BatchDeleteServerTagsRequest().withServerId(instanceId).withBody(body);
+        return vpc.getRateLimiter().callAsync(Family.TAGS, () -> client.batchDeleteServerTagsAsync(request))
+                .thenApply(response -> null);
+    }
+
+    public static CompletableFuture<Void> createServerTags(String instanceId, List<ServerTag> tags, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        BatchCreateServerTagsRequestBody body = new BatchCreateServerTagsRequestBody().withTags(tags)
+                .withAction(BatchCreateServerTagsRequestBody.ActionEnum.fromValue("create"));
+        BatchCreateServerTagsRequest request = new BatchCreateServerTagsRequest().withServerId(instanceId).withBody(body);
+        return vpc.getRateLimiter().callAsync(Family.TAGS, () -> client.batchCreateServerTagsAsync(request))
+                .thenApply(response -> null);
+    }
+
+    public static CompletableFuture<ShowJobResponse> showJob(String jobId, VPC vpc) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        ShowJobRequest request = new ShowJobRequest().withJobId(jobId);
+        return vpc.getRateLimiter().callAsync(Family.JOB, () -> client.showJobAsync(request));
+    }
+
+    /**
+     * @see VPCHelper#getServerListByName(VPC, String)
+     */
+    public static CompletableFuture<List<ServerDetail>> getServerListByName(VPC vpc, String name) {
+        return listServers(vpc, new ListServersDetailsRequest().withName(name));
+    }
+
+    /**
+     * @return the instances whose name starts with {@code name} and which are in the given state
+     */
+    public static CompletableFuture<List<ServerDetail>> getServerListByStatus(VPC vpc, String name, String status) {
+        return listServers(vpc, new ListServersDetailsRequest().withName(name).withStatus(status));
+    }
+
+    /**
+     * @see VPCHelper#getServerListByTag(VPC, String, String)
+     */
+    public static CompletableFuture<List<ServerDetail>> getServerListByTag(VPC vpc, String key, String value) {
+        return listServers(vpc, new ListServersDetailsRequest().withTags(key + "=" + value));
+    }
+
+    /**
+     * Lists all the pages matching the filters of {@code filter}, the pages after the first one concurrently when
+     * the total count is known.
+     */
+    private static CompletableFuture<List<ServerDetail>> listServers(VPC vpc, ListServersDetailsRequest filter) {
+        return listPage(vpc, filter, 1).thenCompose(first -> {
+            List<ServerDetail> instances = new ArrayList<>();
+            if (first.getServers() == null) {
+                return CompletableFuture.completedFuture(instances);
+            }
+            instances.addAll(VPCHelper.filterDeleteInstance(first.getServers()));
+            if (first.getServers().size() < VPCHelper.LIST_PAGE_SIZE) {
+                return CompletableFuture.completedFuture(instances);
+            }
+            if (first.getCount() == null) {
+                return listRemainingPages(vpc, filter, 2, instances);
+            }
+            int pages = (first.getCount() + VPCHelper.LIST_PAGE_SIZE - 1) / VPCHelper.LIST_PAGE_SIZE;
+            List<CompletableFuture<ListServersDetailsResponse>> futures = new ArrayList<>(pages);
+            for (int offset = 2; offset <= pages; offset++) {
+                futures.add(listPage(vpc, filter, offset));
+            }
+            return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+                for (CompletableFuture<ListServersDetailsResponse> future : futures) {
+                    List<ServerDetail> servers = future.join().getServers();
+                    if (servers != null) {
+                        instances.addAll(VPCHelper.filterDeleteInstance(servers));
+                    }
+                }
+                return instances;
+            });
+        });
+    }
+
+    /* the total is unknown, read the pages one after the other until a short one */
+    private static CompletableFuture<List<ServerDetail>> listRemainingPages(VPC vpc, ListServersDetailsRequest filter,
+                                                                            int offset, List<ServerDetail> instances) {
+        return listPage(vpc, filter, offset).thenCompose(response -> {
+            List<ServerDetail> servers = response.getServers();
+            if (servers == null) {
+                return CompletableFuture.completedFuture(instances);
+            }
+            instances.addAll(VPCHelper.filterDeleteInstance(servers));
+            if (servers.size() < VPCHelper.LIST_PAGE_SIZE) {
+                return CompletableFuture.completedFuture(instances);
+            }
+            return listRemainingPages(vpc, filter, offset + 1, instances);
+        });
+    }
+
+    private static CompletableFuture<ListServersDetailsResponse> listPage(VPC vpc, ListServersDetailsRequest filter, int offset) {
+        EcsAsyncClient client = vpc.getEcsAsyncClient();
+        ListServersDetailsRequest request = VPCHelper.page(filter, offset);
+        return vpc.getRateLimiter().callAsync(Family.LIST, () -> client.listServersDetailsAsync(request));
+    }
+}
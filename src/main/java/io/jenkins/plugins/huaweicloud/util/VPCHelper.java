@@ -9,93 +9,110 @@ import com.huaweicloud.sdk.eip.v2.model.ShowPublicipRequest;
 import com.huaweicloud.sdk.eip.v2.model.ShowPublicipResponse;
 import io.jenkins.plugins.huaweicloud.ECSTemplate;
 import io.jenkins.plugins.huaweicloud.VPC;
+import io.jenkins.plugins.huaweicloud.util.ApiRateLimiter.Family;
 
 import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class VPCHelper {
     private static final Logger LOGGER = Logger.getLogger(VPCHelper.class.getName());
+    /* Largest page the ECS list API accepts */
+    static final int LIST_PAGE_SIZE = 1000;
 
-    public static ServerDetail getInstanceWithRetry(String instanceId, VPC vpc) throws SdkException, InterruptedException {
-        for (int i = 0; i < 5; i++) {
-            try {
-                return getInstance(instanceId, vpc);
-            } catch (SdkException e) {
-                LOGGER.log(Level.FINE, e.getMessage());
-                Thread.sleep(5000);
-            }
-        }
-        return getInstance(instanceId, vpc);
+    public static ServerDetail getInstanceWithRetry(String instanceId, VPC vpc) throws SdkException {
+        return await(VPCAsyncHelper.showServerWithRetry(instanceId, vpc), "describing instance " + instanceId);
     }
 
     public static ServerDetail getInstance(String instanceId, VPC vpc) throws SdkException {
-        ShowServerRequest request = new ShowServerRequest().withServerId(instanceId);
-        EcsClient ecsClient = vpc.getEcsClient();
-        ShowServerResponse response = ecsClient.showServer(request);
-        return response.getServer();
+        return await(VPCAsyncHelper.showServer(instanceId, vpc), "describing instance " + instanceId);
     }
 
     public static List<ServerTag> getServerTags(String instanceId, VPC vpc) throws SdkException {
-        EcsClient ecsClient = vpc.getEcsClient();
-        ShowServerTagsRequest request = new ShowServerTagsRequest();
-        request.withServerId(instanceId);
-        ShowServerTagsResponse response = ecsClient.showServerTags(request);
-        return response.getTags();
+        return await(VPCAsyncHelper.getServerTags(instanceId, vpc), "reading the tags of " + instanceId);
     }
 
     public static void deleteServerTags(String instanceId, List<ServerTag> tags, VPC vpc) throws SdkException {
-        EcsClient ecsClient = vpc.getEcsClient();
-        BatchDeleteServerTagsRequest request = new BatchDeleteServerTagsRequest();
-        request.withServerId(instanceId);
-        BatchDeleteServerTagsRequestBody body = new BatchDeleteServerTagsRequestBody();
-        body.withTags(tags);
-        body.withAction(BatchDeleteServerTagsRequestBody.ActionEnum.fromValue("delete"));
-        request.withBody(body);
-        ecsClient.batchDeleteServerTags(request);
+        await(VPCAsyncHelper.deleteServerTags(instanceId, tags, vpc), "deleting the tags of " + instanceId);
     }
 
     public static void createServerTags(String instanceId, List<ServerTag> tags, VPC vpc) throws SdkException {
-        EcsClient ecsClient = vpc.getEcsClient();
-        BatchCreateServerTagsRequest request = new BatchCreateServerTagsRequest();
-        request.withServerId(instanceId);
-        BatchCreateServerTagsRequestBody body = new BatchCreateServerTagsRequestBody();
-        body.withTags(tags);
-        body.withAction(BatchCreateServerTagsRequestBody.ActionEnum.fromValue("create"));
-        request.withBody(body);
-        ecsClient.batchCreateServerTags(request);
+        await(VPCAsyncHelper.createServerTags(instanceId, tags, vpc), "creating the tags of " + instanceId);
+    }
+
+    /* waits for a call of VPCAsyncHelper, failing with the exception of the call */
+    private static <T> T await(CompletableFuture<T> future, String action) throws SdkException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof SdkException ? (SdkException) e.getCause() : new SdkException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SdkException("Interrupted while " + action, e);
+        }
     }
 
-    public static void deleteServer(String instanceId, VPC vpc) throws SdkException {
+    /**
+     * Deletes the servers with their public ips and volumes.
+     *
+     * @return the id of the ECS job deleting the servers
+     */
+    public static String deleteServers(List<String> instances, VPC vpc) throws SdkException {
         EcsClient ecsClient = vpc.getEcsClient();
+        DeleteServersRequest request = deleteServersRequest(instances);
+        return vpc.getRateLimiter().call(Family.DELETE, () -> ecsClient.deleteServers(request)).getJobId();
+    }
+
+    static DeleteServersRequest deleteServersRequest(List<String> instances) {
         DeleteServersRequest request = new DeleteServersRequest();
         DeleteServersRequestBody body = new DeleteServersRequestBody();
         List<ServerId> listBodyServers = new ArrayList<>();
-        listBodyServers.add(new ServerId().withId(instanceId));
+        for (String insID : instances) {
+            listBodyServers.add(new ServerId().withId(insID));
+        }
         body.withServers(listBodyServers).withDeletePublicip(true).withDeleteVolume(true);
         request.withBody(body);
-        ecsClient.deleteServers(request);
+        return request;
     }
 
-    public static void stopECSInstance(String instanceId, VPC vpc) throws SdkException {
+    /**
+     * Soft stops the servers.
+     *
+     * @return the id of the ECS job stopping the servers
+     */
+    public static String stopECSInstances(List<String> instances, VPC vpc) throws SdkException {
         EcsClient ecsClient = vpc.getEcsClient();
+        BatchStopServersRequest request = stopServersRequest(instances);
+        return vpc.getRateLimiter().call(Family.START_STOP, () -> ecsClient.batchStopServers(request)).getJobId();
+    }
+
+    static BatchStopServersRequest stopServersRequest(List<String> instances) {
         BatchStopServersRequest request = new BatchStopServersRequest();
         BatchStopServersRequestBody body = new BatchStopServersRequestBody();
         List<ServerId> listOsStopServers = new ArrayList<>();
-        listOsStopServers.add(new ServerId().withId(instanceId));
+        for (String insID : instances) {
+            listOsStopServers.add(new ServerId().withId(insID));
+        }
         BatchStopServersOption osStopBody = new BatchStopServersOption();
         osStopBody.withServers(listOsStopServers)
                 .withType(BatchStopServersOption.TypeEnum.fromValue("SOFT"));
         body.withOsStop(osStopBody);
         request.withBody(body);
-        ecsClient.batchStopServers(request);
+        return request;
     }
 
     public static void startEcsInstances(List<String> instances, VPC vpc) throws SdkException {
         EcsClient ecsClient = vpc.getEcsClient();
+        BatchStartServersRequest request = startServersRequest(instances);
+        vpc.getRateLimiter().call(Family.START_STOP, () -> ecsClient.batchStartServers(request));
+    }
+
+    static BatchStartServersRequest startServersRequest(List<String> instances) {
         List<ServerId> listOsStartServers = new ArrayList<>();
         for (String insID : instances) {
             listOsStartServers.add(new ServerId().withId(insID));
@@ -106,7 +123,7 @@ public class VPCHelper {
         osStartbody.withServers(listOsStartServers);
         body.withOsStart(osStartbody);
         request.withBody(body);
-        ecsClient.batchStartServers(request);
+        return request;
     }
 
     public static PublicipShowResp getEIPInfo(String eipID, VPC vpc) throws SdkException {
@@ -117,76 +134,34 @@ public class VPCHelper {
         return response.getPublicip();
     }
 
-    public static List<ServerDetail> getAllOfServerList(VPC vpc) {
-        List<ServerDetail> instances = new ArrayList<>();
-        EcsClient ecsClient = vpc.getEcsClient();
-        int offset = 1;
-        int limit = 25;
-        int currentSize;
-        do {
-            ListServersDetailsRequest request = new ListServersDetailsRequest();
-            request.withLimit(limit).withOffset(offset);
-            try {
-                ListServersDetailsResponse response = ecsClient.listServersDetails(request);
-                if (response.getServers() != null) {
-                    currentSize = response.getServers().size();
-                    instances.addAll(Objects.requireNonNull(filterDeleteInstance(response.getServers())));
-                    offset++;
-                } else {
-                    break;
-                }
-            } catch (SdkException e) {
-                e.printStackTrace();
-                break;
-            }
-        } while (limit == currentSize);
-        return instances;
-    }
-
-    public static List<ServerDetail> getAllOfServerByTmp(ECSTemplate template) {
-        List<ServerDetail> instances = new ArrayList<>();
-        EcsClient ecsClient = template.getParent().getEcsClient();
-        int offset = 1;
-        int limit = 25;
-        int currentSize;
-        do {
-            ListServersDetailsRequest request = new ListServersDetailsRequest();
-            request.withLimit(limit).withOffset(offset).withFlavor(template.getFlavorID()).withName(ECSTemplate.srvNamePrefix);
-            try {
-                ListServersDetailsResponse response = ecsClient.listServersDetails(request);
-                if (response.getServers() != null) {
-                    currentSize = response.getServers().size();
-                    instances.addAll(filterInstance(response.getServers(), template));
-                    offset++;
-                } else {
-                    break;
-                }
-            } catch (SdkException e) {
-                e.printStackTrace();
-                break;
-            }
-        } while (limit == currentSize);
-        return instances;
+    /**
+     * Lists every instance of the account that is not deleted. Use {@link FleetInventory} instead of calling this
+     * directly.
+     */
+    public static List<ServerDetail> getAllOfServerList(VPC vpc) throws SdkException {
+        return getServerListByName(vpc, null);
     }
 
-    private static List<ServerDetail> filterInstance(List<ServerDetail> tplAllInstance, ECSTemplate template) {
-        List<ServerDetail> filterInstance = new ArrayList<>();
-        for (ServerDetail server : tplAllInstance) {
-            if (VPCHelper.isTerminated(server.getStatus())) {
-                continue;
-            }
-            if (!server.getImage().getId().equals(template.getImgID())) {
-                continue;
-            }
-            if (!template.description.equals(server.getDescription())) {
-                continue;
-            }
-            filterInstance.add(server);
-        }
-        return filterInstance;
+    /**
+     * Lists the instances that are not deleted and whose name contains {@code name}, all of them when it is null.
+     */
+    public static List<ServerDetail> getServerListByName(VPC vpc, String name) throws SdkException {
+        return await(VPCAsyncHelper.getServerListByName(vpc, name), "listing the instances");
+    }
+
+    /**
+     * Lists the instances that are not deleted and carry the tag {@code key=value}, filtered by ECS.
+     */
+    public static List<ServerDetail> getServerListByTag(VPC vpc, String key, String value) throws SdkException {
+        return await(VPCAsyncHelper.getServerListByTag(vpc, key, value), "listing the instances tagged " + key);
+    }
+
+    static ListServersDetailsRequest page(ListServersDetailsRequest filter, int offset) {
+        return new ListServersDetailsRequest().withName(filter.getName()).withTags(filter.getTags())
+                .withStatus(filter.getStatus()).withLimit(LIST_PAGE_SIZE).withOffset(offset);
     }
 
-    private static List<ServerDetail> filterDeleteInstance(List<ServerDetail> servers) {
+    static List<ServerDetail> filterDeleteInstance(List<ServerDetail> servers) {
         List<ServerDetail> sds = new ArrayList<>();
         for (ServerDetail sd : servers) {
             if (!isTerminated(sd.getStatus())) {
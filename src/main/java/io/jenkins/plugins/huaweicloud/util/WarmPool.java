@@ -0,0 +1,255 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Computer;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import io.jenkins.plugins.huaweicloud.ECSAbstractSlave;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.VPC;
+import jenkins.model.Jenkins;
+import jenkins.slaves.iterators.api.NodeIterator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps up to {@link ECSTemplate#getWarmPoolSize()} bootstrapped instances of each template of a cloud stopped, so
+ * that demand is served first by starting them, which takes seconds, rather than by creating and bootstrapping new
+ * instances.
+ * <p>
+ * A warm instance is a SHUTOFF instance of the template whose agent, if any, is offline. The pool is refilled in the
+ * background: idle agents of a template short of warm instances are stopped instead of terminated, and the missing
+ * ones are created as agents that take no task while they bootstrap and are stopped as soon as they are online,
+ * see {@link ECSAbstractSlave#joinWarmPool()}. Surplus warm instances are terminated. Starts served by
+ * the pool and creations are counted as {@code warmpool.hits} and {@code warmpool.misses}, and the time to online of
+ * the agents is recorded as {@code online.warm} and {@code online.cold}.
+ */
+public class WarmPool {
+    private static final Logger LOGGER = Logger.getLogger(WarmPool.class.getName());
+
+    private static final long REPLENISH_INTERVAL = Long.getLong(WarmPool.class.getName() + ".REPLENISH_INTERVAL",
+            TimeUnit.MINUTES.toMillis(1));
+
+    private volatile VPC cloud;
+    private final CloudStatistics statistics;
+    /* instance ids on their way into the pool, per template fingerprint, guarded by this */
+    private final Map<String, Set<String>> joining = new HashMap<>();
+
+    public WarmPool(VPC cloud, CloudStatistics statistics) {
+        this.cloud = cloud;
+        this.statistics = statistics;
+        statistics.gauge("warmpool.hit_rate", this::getHitRate);
+        statistics.gauge("warmpool.joining", this::getJoining);
+    }
+
+    public void setCloud(VPC cloud) {
+        this.cloud = cloud;
+    }
+
+    public String getHitRate() {
+        long hits = statistics.get("warmpool.hits");
+        long total = hits + statistics.get("warmpool.misses");
+        return total == 0 ? "-" : (hits * 100 / total) + "%";
+    }
+
+    private synchronized int getJoining() {
+        int count = 0;
+        for (Set<String> ids : joining.values()) {
+            count += ids.size();
+        }
+        return count;
+    }
+
+    /**
+     * Records a provisioning request of a template with a warm pool.
+     *
+     * @param hits   instances started from the pool
+     * @param misses instances created because the pool was empty
+     */
+    public void record(int hits, int misses) {
+        statistics.add("warmpool.hits", hits);
+        statistics.add("warmpool.misses", misses);
+    }
+
+    /**
+     * @return the stopped instances of the template that provisioning can start
+     */
+    public int getAvailable(ECSTemplate t) {
+        if (t.getWarmPoolSize() <= 0) {
+            return 0;
+        }
+        return warmInstances(t, inventory(), agentsByInstance()).size();
+    }
+
+    /**
+     * Offers an idle agent to the pool of its template.
+     *
+     * @return whether the agent should be stopped rather than terminated
+     */
+    public synchronized boolean offer(ECSAbstractSlave slave) {
+        ECSTemplate t = cloud.getTemplate(slave.templateDescription);
+        if (t == null || t.getWarmPoolSize() <= 0) {
+            return false;
+        }
+        Set<String> ids = joining(t);
+        if (getAvailable(t) + ids.size() >= t.getWarmPoolSize()) {
+            return false;
+        }
+        ids.add(slave.getInstanceId());
+        statistics.increment("warmpool.recycled");
+        return true;
+    }
+
+    private Set<String> joining(ECSTemplate t) {
+        return joining.computeIfAbsent(t.getFingerprint(), k -> new HashSet<>());
+    }
+
+    /**
+     * Settles the instances joining the pool, then creates the missing warm instances and terminates the surplus.
+     */
+    void replenish() {
+        FleetInventory.Snapshot snapshot = inventory();
+        if (snapshot.getTimestamp() == 0) {
+            return;
+        }
+        Map<String, ECSAbstractSlave> agents = agentsByInstance();
+        for (ECSTemplate t : cloud.getTemplates()) {
+            if (t.getWarmPoolSize() <= 0) {
+                continue;
+            }
+            int missing;
+            List<ServerDetail> warm = warmInstances(t, snapshot, agents);
+            synchronized (this) {
+                Set<String> ids = joining(t);
+                ids.removeIf(id -> settle(snapshot.get(id)));
+                missing = t.getWarmPoolSize() - warm.size() - ids.size();
+            }
+            if (missing > 0) {
+                create(t, missing);
+            }
+            for (int i = 0; i < -missing && i < warm.size(); i++) {
+                terminate(warm.get(warm.size() - 1 - i), agents);
+            }
+        }
+    }
+
+    /**
+     * @return whether the instance is done joining the pool, because it is stopped or gone
+     */
+    private static boolean settle(ServerDetail instance) {
+        return instance == null || VPCHelper.isTerminated(instance.getStatus()) || "SHUTOFF".equals(instance.getStatus());
+    }
+
+    FleetInventory.Snapshot inventory() {
+        return cloud.getInventory().current();
+    }
+
+    void create(ECSTemplate t, int number) {
+        int reserved = cloud.reserveCapacity(t, number);
+        if (reserved <= 0) {
+            return;
+        }
+        LOGGER.log(Level.INFO, "{0}. Creating {1} instance(s) for the warm pool", new Object[]{t, reserved});
+        statistics.add("warmpool.created", reserved);
+        List<CompletableFuture<ECSAbstractSlave>> slaves = t.createAsync(reserved);
+        for (CompletableFuture<ECSAbstractSlave> future : slaves) {
+            future.whenComplete((slave, error) -> {
+                if (error != null) {
+                    cloud.getCapacityLedger().release(t.getFingerprint(), 1);
+                    LOGGER.log(Level.WARNING, t + ". Failed to create an instance for the warm pool", error);
+                    return;
+                }
+                cloud.getCapacityLedger().commit(t.getFingerprint(), slave.getInstanceId());
+                synchronized (this) {
+                    joining(t).add(slave.getInstanceId());
+                }
+                try {
+                    slave.joinWarmPool();
+                    Jenkins.get().addNode(slave);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, t + ". Failed to add warm pool agent " + slave.getNodeName(), e);
+                }
+            });
+        }
+    }
+
+    void terminate(ServerDetail instance, Map<String, ECSAbstractSlave> agents) {
+        statistics.increment("warmpool.trimmed");
+        ECSAbstractSlave agent = agents.get(instance.getId());
+        if (agent != null) {
+            agent.terminate();
+        } else {
+            cloud.getActionQueue().delete(instance.getId());
+        }
+    }
+
+    /* the instances claimed by a provisioning request are being started and no longer count as warm */
+    private List<ServerDetail> warmInstances(ECSTemplate t, FleetInventory.Snapshot snapshot,
+                                             Map<String, ECSAbstractSlave> agents) {
+        List<ServerDetail> warm = new ArrayList<>();
+        for (ServerDetail instance : snapshot.getByFingerprint(t.getFingerprint())) {
+            if (!"SHUTOFF".equals(instance.getStatus()) || cloud.getCapacityLedger().isClaimed(instance.getId())) {
+                continue;
+            }
+            ECSAbstractSlave agent = agents.get(instance.getId());
+            Computer computer = agent == null ? null : agent.toComputer();
+            if (computer == null || computer.isOffline()) {
+                warm.add(instance);
+            }
+        }
+        return warm;
+    }
+
+    private static Map<String, ECSAbstractSlave> agentsByInstance() {
+        Map<String, ECSAbstractSlave> agents = new HashMap<>();
+        for (ECSAbstractSlave agent : NodeIterator.nodes(ECSAbstractSlave.class)) {
+            agents.put(agent.getInstanceId(), agent);
+        }
+        return agents;
+    }
+
+    /**
+     * Replenishes the warm pools of every cloud.
+     */
+    @Extension
+    public static class ReplenishWork extends AsyncPeriodicWork {
+        public ReplenishWork() {
+            super("Huawei Cloud warm pool");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return REPLENISH_INTERVAL;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            for (Cloud c : Jenkins.get().clouds) {
+                if (c instanceof VPC) {
+                    try {
+                        ((VPC) c).getWarmPool().replenish();
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to replenish the warm pool of " + c.name, e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected Level getNormalLoggingLevel() {
+            return Level.FINEST;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package io.jenkins.plugins.huaweicloud;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.model.Descriptor;
+import hudson.model.Node;
+import io.jenkins.plugins.huaweicloud.util.CloudStatistics;
+import io.jenkins.plugins.huaweicloud.util.FleetInventory;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+import org.jvnet.hudson.test.TestExtension;
+
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ECSRetentionStrategyTest {
+    private static final long LONG_AGO = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void terminatesAgentsThatDidNotComeOnlineInTime() throws Exception {
+        ECSTemplate linux = template("linux", "flavor", 0);
+        HuaweiVPC cloud = cloud("cloud", linux);
+        RecordingAgent late = agent(cloud, linux, "i-1");
+        RecordingAgent booting = agent(cloud, linux, "i-2");
+
+        ECSRetentionStrategy.evaluate(cloud, snapshot(instance(linux, "i-1", LONG_AGO), instance(linux, "i-2", 0)));
+        assertTrue(late.terminated);
+        assertFalse(booting.terminated);
+    }
+
+    @Test
+    public void keepsTheMinimumNumberOfAgents() throws Exception {
+        ECSTemplate linux = template("linux", "flavor", 2);
+        HuaweiVPC cloud = cloud("cloud", linux);
+        List<RecordingAgent> agents = Arrays.asList(agent(cloud, linux, "i-1"), agent(cloud, linux, "i-2"),
+                agent(cloud, linux, "i-3"));
+
+        ECSRetentionStrategy.evaluate(cloud, snapshot(instance(linux, "i-1", LONG_AGO),
+                instance(linux, "i-2", LONG_AGO), instance(linux, "i-3", LONG_AGO)));
+        assertEquals(1, agents.stream().filter(agent -> agent.terminated).count());
+    }
+
+    @Test
+    public void waitsForInstancesMissingFromTheInventory() throws Exception {
+        ECSTemplate linux = template("linux", "flavor", 0);
+        HuaweiVPC cloud = cloud("cloud", linux);
+        RecordingAgent agent = agent(cloud, linux, "i-1");
+
+        ECSRetentionStrategy.evaluate(cloud, snapshot());
+        assertFalse(agent.terminated);
+    }
+
+    @Test
+    public void countsAgentsAgainstTheTemplateOfTheirInstance() throws Exception {
+        ECSTemplate small = template("linux", "small", 1);
+        ECSTemplate large = template("linux", "large", 0);
+        HuaweiVPC cloud = cloud("cloud", small, large);
+        // the description alone names the first template, whose minimum would keep the agent
+        RecordingAgent agent = agent(cloud, small, "i-1");
+
+        ECSRetentionStrategy.evaluate(cloud, snapshot(instance(large, "i-1", LONG_AGO)));
+        assertTrue(agent.terminated);
+    }
+
+    @Test
+    public void leavesAgentsOfOtherCloudsAlone() throws Exception {
+        ECSTemplate linux = template("linux", "flavor", 0);
+        HuaweiVPC cloud = cloud("cloud", linux);
+        RecordingAgent agent = agent(cloud("other", template("linux", "flavor", 0)), linux, "i-1");
+
+        ECSRetentionStrategy.evaluate(cloud, snapshot(instance(linux, "i-1", LONG_AGO)));
+        assertFalse(agent.terminated);
+    }
+
+    private static ECSTemplate template(String description, String flavor, int minimum) {
+        return new ECSTemplate(description, "image", flavor, "zone", "linux", Node.Mode.NORMAL, "", "subnet",
+                VolumeType.SATA, VolumeType.SATA, "/home/jenkins", "40", Collections.emptyList(), "1", "30", "600",
+                "", "", Collections.emptyList(), minimum, false, false, "", "", false, "", "1");
+    }
+
+    private HuaweiVPC cloud(String name, ECSTemplate... templates) {
+        HuaweiVPC cloud = new HuaweiVPC(name, "credentials", "key", "", "vpc", Arrays.asList(templates));
+        r.jenkins.clouds.add(cloud);
+        return cloud;
+    }
+
+    private RecordingAgent agent(HuaweiVPC cloud, ECSTemplate t, String instanceId) throws Exception {
+        RecordingAgent agent = new RecordingAgent(instanceId, t, cloud.name);
+        agent.setRetentionStrategy(new OfflineRetentionStrategy());
+        r.jenkins.addNode(agent);
+        return agent;
+    }
+
+    /* an instance of the template last updated the given time ago */
+    private static ServerDetail instance(ECSTemplate t, String instanceId, long age) {
+        String updated = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date(System.currentTimeMillis() - age));
+        return new ServerDetail().withId(instanceId).withStatus("ACTIVE").withUpdated(updated)
+                .withTags(Collections.singletonList(ECSTag.TAG_NAME_JENKINS_TEMPLATE + "=" + t.getFingerprint()));
+    }
+
+    /* an inventory listed from the given instances */
+    private static FleetInventory.Snapshot snapshot(ServerDetail... instances) {
+        HuaweiVPC cloud = new HuaweiVPC("inventory", "credentials", "key", "", "vpc", Collections.emptyList());
+        return new FleetInventory(cloud, new CloudStatistics()) {
+            @Override
+            protected List<ServerDetail> listServers() {
+                return Arrays.asList(instances);
+            }
+        }.forceRefresh();
+    }
+
+    /**
+     * Records its termination instead of deleting its instance.
+     */
+    public static class RecordingAgent extends ECSOndemandSlave {
+        private transient volatile boolean terminated;
+
+        RecordingAgent(String instanceId, ECSTemplate t, String cloudName) throws Descriptor.FormException, IOException {
+            super(instanceId, instanceId, t.description, 1, t.getLabelString(), Node.Mode.NORMAL, "/home/jenkins",
+                    Collections.emptyList(), "", "30", Collections.emptyList(), cloudName, 600, "", "", false);
+        }
+
+        @Override
+        public void terminate() {
+            terminated = true;
+        }
+
+        @TestExtension
+        public static final class DescriptorImpl extends ECSAbstractSlave.DescriptorImpl {
+            @Override
+            public @NotNull String getDisplayName() {
+                return "Recording agent";
+            }
+        }
+    }
+
+    /**
+     * Leaves the agent offline rather than connecting it when it is added.
+     */
+    public static class OfflineRetentionStrategy extends ECSRetentionStrategy {
+        public OfflineRetentionStrategy() {
+            super("30");
+        }
+
+        @Override
+        public void start(@NotNull ECSComputer c) {
+        }
+    }
+}
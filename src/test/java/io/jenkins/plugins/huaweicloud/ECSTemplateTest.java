@@ -0,0 +1,107 @@
+package io.jenkins.plugins.huaweicloud;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.model.Node;
+import hudson.slaves.RetentionStrategy;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ECSTemplateTest {
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void concurrentRequestsNeverPickTheSameOrphan() throws Exception {
+        ListingTemplate linux = template("i-1", "i-2", "i-3", "i-4");
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<List<CompletableFuture<ECSAbstractSlave>>>> requests = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                requests.add(executor.submit(() -> linux.provisionAsync(1, EnumSet.noneOf(ECSTemplate.ProvisionOptions.class))));
+            }
+            Set<String> picked = new HashSet<>();
+            int empty = 0;
+            for (Future<List<CompletableFuture<ECSAbstractSlave>>> request : requests) {
+                List<CompletableFuture<ECSAbstractSlave>> slaves = request.get();
+                if (slaves == null) {
+                    empty++;
+                } else {
+                    picked.add(slaves.get(0).get().getInstanceId());
+                }
+            }
+            assertEquals(new HashSet<>(Arrays.asList("i-1", "i-2", "i-3", "i-4")), picked);
+            assertEquals(4, empty);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void leavesInstancesOfAgentsAlone() throws Exception {
+        ListingTemplate linux = template("i-1", "i-2", "i-3");
+        ECSOndemandSlave agent = new ECSOndemandSlave("i-1", "i-1", linux.description, 1, linux.getLabelString(),
+                Node.Mode.NORMAL, "/home/jenkins", Collections.emptyList(), "", "30", Collections.emptyList(),
+                linux.getParent().name, 600, "", "", false);
+        agent.setRetentionStrategy(RetentionStrategy.NOOP);
+        r.jenkins.addNode(agent);
+
+        List<CompletableFuture<ECSAbstractSlave>> slaves = linux.provisionAsync(3, EnumSet.noneOf(ECSTemplate.ProvisionOptions.class));
+        Set<String> picked = new HashSet<>();
+        for (CompletableFuture<ECSAbstractSlave> slave : slaves) {
+            picked.add(slave.get().getInstanceId());
+        }
+        assertEquals(new HashSet<>(Arrays.asList("i-2", "i-3")), picked);
+    }
+
+    @Test
+    public void claimedOrphansAreNotPickedAgain() throws Exception {
+        ListingTemplate linux = template("i-1");
+        assertEquals(1, linux.provisionAsync(1, EnumSet.noneOf(ECSTemplate.ProvisionOptions.class)).size());
+        assertNull(linux.provisionAsync(1, EnumSet.noneOf(ECSTemplate.ProvisionOptions.class)));
+    }
+
+    /* a template whose running orphans are the given instances, on a cloud of its own */
+    private ListingTemplate template(String... instanceIds) {
+        ListingTemplate t = new ListingTemplate();
+        for (String instanceId : instanceIds) {
+            t.instances.add(new ServerDetail().withId(instanceId).withStatus("ACTIVE")
+                    .withTags(Collections.singletonList(ECSTag.TAG_NAME_JENKINS_TEMPLATE + "=" + t.getFingerprint())));
+        }
+        r.jenkins.clouds.add(new HuaweiVPC("cloud", "credentials", "key", "", "vpc", Collections.singletonList(t)));
+        return t;
+    }
+
+    /**
+     * Lists its instances from {@link #instances} instead of ECS.
+     */
+    private static class ListingTemplate extends ECSTemplate {
+        private final List<ServerDetail> instances = new ArrayList<>();
+
+        ListingTemplate() {
+            super("linux", "image", "flavor", "zone", "linux", Node.Mode.NORMAL, "", "subnet",
+                    VolumeType.SATA, VolumeType.SATA, "/home/jenkins", "40", Collections.emptyList(), "1", "30", "600",
+                    "", "", Collections.emptyList(), 0, false, false, "", "", false, "", "1");
+        }
+
+        @Override
+        List<ServerDetail> tplAllInstance() {
+            return instances;
+        }
+    }
+}
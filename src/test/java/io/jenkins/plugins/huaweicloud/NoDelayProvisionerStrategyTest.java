@@ -0,0 +1,41 @@
+package io.jenkins.plugins.huaweicloud;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class NoDelayProvisionerStrategyTest {
+
+    @Test
+    public void spreadsInProportionToWeights() {
+        int[] shares = NoDelayProvisionerStrategy.spread(new int[]{10, 10}, new double[]{3, 1}, 8);
+        assertArrayEquals(new int[]{6, 2}, shares);
+    }
+
+    @Test
+    public void givesRoundingRemainderToHeaviestCloud() {
+        int[] shares = NoDelayProvisionerStrategy.spread(new int[]{10, 10, 10}, new double[]{1, 1, 1}, 10);
+        assertArrayEquals(new int[]{4, 3, 3}, shares);
+
+        shares = NoDelayProvisionerStrategy.spread(new int[]{10, 10}, new double[]{1, 2}, 1);
+        assertArrayEquals(new int[]{0, 1}, shares);
+    }
+
+    @Test
+    public void movesWhatDoesNotFitToOtherClouds() {
+        int[] shares = NoDelayProvisionerStrategy.spread(new int[]{2, 10}, new double[]{1, 1}, 8);
+        assertArrayEquals(new int[]{2, 6}, shares);
+    }
+
+    @Test
+    public void assignsNothingWhenAllCloudsAreFull() {
+        int[] shares = NoDelayProvisionerStrategy.spread(new int[]{0, 0}, new double[]{0, 0}, 5);
+        assertArrayEquals(new int[]{0, 0}, shares);
+    }
+
+    @Test
+    public void assignsNoMoreThanTheRoomLeft() {
+        int[] shares = NoDelayProvisionerStrategy.spread(new int[]{1, 2}, new double[]{1, 1}, 10);
+        assertArrayEquals(new int[]{1, 2}, shares);
+    }
+}
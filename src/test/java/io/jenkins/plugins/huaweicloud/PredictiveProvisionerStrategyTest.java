@@ -0,0 +1,124 @@
+package io.jenkins.plugins.huaweicloud;
+
+import hudson.model.Label;
+import hudson.model.Node;
+import hudson.slaves.Cloud;
+import hudson.slaves.NodeProvisioner;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PredictiveProvisionerStrategyTest {
+    private static final long HALF_LIFE = TimeUnit.MINUTES.toMillis(10);
+
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    private Label label;
+    private long start;
+
+    @Before
+    public void setUp() {
+        label = r.jenkins.getLabel("linux");
+        start = System.currentTimeMillis();
+    }
+
+    @Test
+    public void plansTheExecutorsMissingFromTheForecast() {
+        RecordingVPC cloud = cloud("cloud", 10, template("linux"));
+        List<HuaweiVPC> clouds = Collections.singletonList(cloud);
+
+        assertTrue(PredictiveProvisionerStrategy.plan(clouds, label, start, 0, 0).isEmpty());
+        // half of the recent demand average comes from the new demand after one half life
+        assertEquals(3, PredictiveProvisionerStrategy.plan(clouds, label, start + HALF_LIFE, 10, 2).size());
+        assertEquals(Collections.singletonList(3), cloud.requested);
+    }
+
+    @Test
+    public void leavesCapacityCoveringTheForecastAlone() {
+        RecordingVPC cloud = cloud("cloud", 10, template("linux"));
+        List<HuaweiVPC> clouds = Collections.singletonList(cloud);
+
+        PredictiveProvisionerStrategy.plan(clouds, label, start, 0, 0);
+        assertTrue(PredictiveProvisionerStrategy.plan(clouds, label, start + HALF_LIFE, 10, 5).isEmpty());
+        assertTrue(cloud.requested.isEmpty());
+    }
+
+    @Test
+    public void plansWhatTheCapsLeaveOutOnTheNextCloud() {
+        RecordingVPC full = cloud("full", 0, template("linux"));
+        RecordingVPC capped = cloud("capped", 2, template("linux"));
+        RecordingVPC roomy = cloud("roomy", 10, template("linux"));
+        List<HuaweiVPC> clouds = Arrays.asList(full, capped, roomy);
+
+        PredictiveProvisionerStrategy.plan(clouds, label, start, 0, 0);
+        assertEquals(5, PredictiveProvisionerStrategy.plan(clouds, label, start + HALF_LIFE, 10, 0).size());
+        assertEquals(Collections.singletonList(5), full.requested);
+        assertEquals(Collections.singletonList(5), capped.requested);
+        assertEquals(Collections.singletonList(3), roomy.requested);
+    }
+
+    @Test
+    public void keepsOneHistoryPerTemplate() {
+        ECSTemplate small = template("small");
+        ECSTemplate large = template("large");
+        ECSTemplate other = template("other");
+        RecordingVPC first = cloud("first", 10, small, large);
+        RecordingVPC second = cloud("second", 10, other);
+        List<HuaweiVPC> clouds = Arrays.asList(first, second);
+
+        PredictiveProvisionerStrategy.plan(clouds, label, start, 0, 0);
+        PredictiveProvisionerStrategy.plan(clouds, label, start + HALF_LIFE, 10, 10);
+        assertEquals(5, first.getForecaster().getTarget(PredictiveProvisionerStrategy.prefix(small)));
+        assertEquals(5, first.getForecaster().getTarget(PredictiveProvisionerStrategy.prefix(large)));
+        assertEquals(5, second.getForecaster().getTarget(PredictiveProvisionerStrategy.prefix(other)));
+    }
+
+    private static ECSTemplate template(String description) {
+        return new ECSTemplate(description, "image", "flavor", "zone", "linux", Node.Mode.NORMAL, "", "subnet",
+                VolumeType.SATA, VolumeType.SATA, "/home/jenkins", "40", Collections.emptyList(), "1", "30", "600",
+                "", "", Collections.emptyList(), 0, false, false, "", "", false, "", "1");
+    }
+
+    private RecordingVPC cloud(String name, int room, ECSTemplate... templates) {
+        RecordingVPC cloud = new RecordingVPC(name, room, Arrays.asList(templates));
+        cloud.setPredictiveProvisioning(true);
+        r.jenkins.clouds.add(cloud);
+        return cloud;
+    }
+
+    /**
+     * Plans one single executor node per requested executor while the room lasts, instead of creating instances.
+     */
+    private static class RecordingVPC extends HuaweiVPC {
+        private final List<Integer> requested = new ArrayList<>();
+        private int room;
+
+        RecordingVPC(String name, int room, List<ECSTemplate> templates) {
+            super(name, "credentials", "key", "", "vpc", templates);
+            this.room = room;
+        }
+
+        @Override
+        public Collection<NodeProvisioner.PlannedNode> provision(Cloud.CloudState state, int excessWorkload) {
+            requested.add(excessWorkload);
+            List<NodeProvisioner.PlannedNode> plannedNodes = new ArrayList<>();
+            for (; room > 0 && plannedNodes.size() < excessWorkload; room--) {
+                plannedNodes.add(new NodeProvisioner.PlannedNode(name, new CompletableFuture<>(), 1));
+            }
+            return plannedNodes;
+        }
+    }
+}
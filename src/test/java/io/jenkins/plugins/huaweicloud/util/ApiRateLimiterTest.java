@@ -0,0 +1,84 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ApiRateLimiterTest {
+    private CloudStatistics statistics;
+    private ApiRateLimiter limiter;
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        limiter = new ApiRateLimiter(statistics, 10, 25);
+    }
+
+    @Test
+    public void recognizesThrottling() {
+        assertTrue(ApiRateLimiter.isThrottling(new ServiceResponseException(429, "Ecs.0000", "too many", "r")));
+        assertTrue(ApiRateLimiter.isThrottling(new ServiceResponseException(400, "APIGW.0308", "throttled", "r")));
+        assertFalse(ApiRateLimiter.isThrottling(new ServiceResponseException(400, "Ecs.0005", "bad", "r")));
+    }
+
+    @Test
+    public void throttlingHalvesFamilyAndCloudRates() {
+        limiter.throttled(ApiRateLimiter.Family.CREATE);
+        assertEquals("5.0", statistics.snapshot().get("ratelimit.create.rate"));
+        assertEquals("12.5", statistics.snapshot().get("ratelimit.cloud.rate"));
+        assertEquals("10.0", statistics.snapshot().get("ratelimit.list.rate"));
+        assertEquals(1, statistics.get("ratelimit.create.throttled"));
+    }
+
+    @Test
+    public void rateDoesNotDropBelowFloor() {
+        for (int i = 0; i < 10; i++) {
+            limiter.throttled(ApiRateLimiter.Family.LIST);
+        }
+        assertEquals("0.5", statistics.snapshot().get("ratelimit.list.rate"));
+    }
+
+    @Test
+    public void callSlowsDownOnlyThrottledFamilies() {
+        try {
+            limiter.call(ApiRateLimiter.Family.DESCRIBE, () -> {
+                throw new ServiceResponseException(500, "Ecs.0001", "error", "r");
+            });
+            fail();
+        } catch (ServiceResponseException e) {
+            assertEquals(500, e.getHttpStatusCode());
+        }
+        assertEquals("10.0", statistics.snapshot().get("ratelimit.describe.rate"));
+
+        try {
+            limiter.call(ApiRateLimiter.Family.DESCRIBE, () -> {
+                throw new ServiceResponseException(429, "Ecs.0000", "too many", "r");
+            });
+            fail();
+        } catch (ServiceResponseException e) {
+            assertEquals(429, e.getHttpStatusCode());
+        }
+        assertEquals("5.0", statistics.snapshot().get("ratelimit.describe.rate"));
+        assertEquals("ok", limiter.call(ApiRateLimiter.Family.DESCRIBE, () -> "ok"));
+    }
+
+    @Test
+    public void keepsReserveOfCloudBucketForPriorityCalls() {
+        limiter = new ApiRateLimiter(statistics, 10, 5);
+        // the cloud holds 5 calls, the last one is kept for the priority families
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire(ApiRateLimiter.Family.LIST);
+        }
+        CompletableFuture<Void> tags = limiter.acquireAsync(ApiRateLimiter.Family.TAGS);
+        CompletableFuture<Void> create = limiter.acquireAsync(ApiRateLimiter.Family.CREATE);
+        assertFalse(tags.isDone());
+        assertTrue(create.isDone());
+    }
+}
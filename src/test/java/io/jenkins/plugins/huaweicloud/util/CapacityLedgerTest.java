@@ -0,0 +1,105 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CapacityLedgerTest {
+    private CloudStatistics statistics;
+    private CapacityLedger ledger;
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        ledger = new CapacityLedger(statistics);
+    }
+
+    @Test
+    public void reservesWithinTemplateAndCloudCaps() {
+        assertEquals(3, ledger.reserve("a", 3, 10, 5));
+        assertEquals(7, ledger.reserve("b", 10, 10, 10));
+        assertEquals(0, ledger.reserve("a", 3, 10, 1));
+        assertEquals(0, ledger.reserve("c", 10, 10, 1));
+        assertEquals(10, ledger.getReserved());
+        assertEquals(3, ledger.getReserved("a"));
+        assertEquals(10, statistics.get("capacity.reservations"));
+    }
+
+    @Test
+    public void grantsNothingWhenOverCap() {
+        ledger.reserve("a", 5, 5, 5);
+        ledger.commit("a", "i-1");
+        ledger.commit("a", "i-2");
+        // the caps were lowered below what is already running
+        assertEquals(0, ledger.reserve("a", 1, 1, 3));
+        assertEquals(0, ledger.getRoom("a", 1, 1));
+    }
+
+    @Test
+    public void commitTurnsReservationIntoInstance() {
+        ledger.reserve("a", 2, 10, 2);
+        ledger.commit("a", "i-1");
+        assertEquals(1, ledger.getCommitted());
+        assertEquals(1, ledger.getCommitted("a"));
+        assertEquals(1, ledger.getReserved("a"));
+        assertEquals(0, ledger.getRoom("a", 2, 10));
+
+        ledger.release("a", 1);
+        assertEquals(0, ledger.getReserved());
+        assertEquals(1, ledger.getRoom("a", 2, 10));
+    }
+
+    @Test
+    public void countsAnInstanceCommittedTwiceOnce() {
+        ledger.reserve("a", 5, 5, 2);
+        ledger.commit("a", "i-1");
+        ledger.commit("a", "i-1");
+        assertEquals(1, ledger.getCommitted());
+        assertEquals(0, ledger.getReserved());
+    }
+
+    @Test
+    public void releasesNoMoreThanWasReserved() {
+        ledger.reserve("a", 5, 5, 1);
+        ledger.release("a", 3);
+        ledger.release("b", 1);
+        assertEquals(0, ledger.getReserved());
+        assertEquals(5, ledger.getRoom("a", 5, 5));
+    }
+
+    @Test
+    public void terminatedInstanceFreesRoom() {
+        ledger.reserve("a", 1, 1, 1);
+        ledger.commit("a", "i-1");
+        assertEquals(0, ledger.getRoom("a", 1, 1));
+        ledger.terminated("i-1");
+        assertEquals(0, ledger.getCommitted());
+        assertEquals(1, ledger.getRoom("a", 1, 1));
+    }
+
+    @Test
+    public void keepsInstancesCommittedAfterTheListing() {
+        ledger.reserve("a", 5, 5, 2);
+        ledger.commit("a", "i-1");
+        ledger.commit("a", "i-2");
+        ledger.terminated("i-2");
+        assertFalse(ledger.isReconciled());
+
+        ledger.reconcile(FleetInventory.Snapshot.EMPTY);
+        assertTrue(ledger.isReconciled());
+        assertEquals(1, ledger.getCommitted("a"));
+    }
+
+    @Test
+    public void claimsInstancesPickedForReuse() {
+        ledger.claim(Arrays.asList("i-1", "i-2"));
+        assertTrue(ledger.isClaimed("i-1"));
+        assertTrue(ledger.isClaimed("i-2"));
+        assertFalse(ledger.isClaimed("i-3"));
+    }
+}
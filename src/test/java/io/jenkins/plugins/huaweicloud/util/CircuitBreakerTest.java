@@ -0,0 +1,70 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("region", 3, TimeUnit.MINUTES.toMillis(1));
+        breaker.failure();
+        breaker.failure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+
+        breaker.failure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsTheFailures() {
+        CircuitBreaker breaker = new CircuitBreaker("region", 3, TimeUnit.MINUTES.toMillis(1));
+        breaker.failure();
+        breaker.failure();
+        breaker.success();
+        breaker.failure();
+        breaker.failure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(2, breaker.getFailures());
+    }
+
+    @Test
+    public void letsASingleTrialThroughOnceHalfOpen() {
+        CircuitBreaker breaker = new CircuitBreaker("region", 1, 0);
+        breaker.failure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.isOpen());
+
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+
+        breaker.success();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void failedTrialOpensAgain() {
+        CircuitBreaker breaker = new CircuitBreaker("region", 5, 0);
+        for (int i = 0; i < 5; i++) {
+            breaker.failure();
+        }
+        assertTrue(breaker.allowRequest());
+        breaker.failure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        // the next trial is let through once the open duration passed again
+        assertTrue(breaker.allowRequest());
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,78 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import io.jenkins.plugins.huaweicloud.HuaweiVPC;
+import io.jenkins.plugins.huaweicloud.VPC;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class CloudRuntimeTest {
+
+    private static VPC cloud(String name) {
+        return new HuaweiVPC(name, "credentials", "key", "", "vpc", Collections.emptyList());
+    }
+
+    @Test
+    public void savedConfigurationKeepsRuntime() {
+        VPC saved = cloud("a");
+        VPC submitted = cloud("a");
+        assertNotSame(saved.getJobTracker(), submitted.getJobTracker());
+
+        submitted.setStateId(saved.getStateId());
+        assertSame(saved.getCapacityLedger(), submitted.getCapacityLedger());
+        assertSame(saved.getJobTracker(), submitted.getJobTracker());
+        assertSame(saved.getActionQueue(), submitted.getActionQueue());
+        assertSame(saved.getInventory(), submitted.getInventory());
+    }
+
+    @Test
+    public void renamedCloudKeepsRuntime() {
+        VPC saved = cloud("a");
+        VPC renamed = cloud("b");
+        renamed.setStateId(saved.getStateId());
+        assertEquals(saved.getStateId(), renamed.getStateId());
+        assertSame(saved.getJobTracker(), renamed.getJobTracker());
+        assertSame(saved.getStatistics(), renamed.getStatistics());
+    }
+
+    @Test
+    public void newCloudWithSameNameStartsFresh() {
+        VPC saved = cloud("a");
+        VPC added = cloud("a");
+        assertNotEquals(saved.getStateId(), added.getStateId());
+        assertNotSame(saved.getCapacityLedger(), added.getCapacityLedger());
+    }
+
+    @Test
+    public void removedCloudIsReleased() {
+        VPC removed = cloud("a");
+        VPC kept = cloud("b");
+        removed.getCapacityLedger().reserve("template", 5, 5, 2);
+        CloudRuntime.retain(Collections.singleton(kept.getStateId()));
+
+        VPC readded = cloud("a");
+        readded.setStateId(removed.getStateId());
+        assertNotSame(removed.getCapacityLedger(), readded.getCapacityLedger());
+        assertEquals(0, readded.getCapacityLedger().getReserved());
+
+        VPC resubmitted = cloud("b");
+        resubmitted.setStateId(kept.getStateId());
+        assertSame(kept.getCapacityLedger(), resubmitted.getCapacityLedger());
+    }
+
+    @Test
+    public void takeoverDropsReservationsOfRemovedTemplates() {
+        VPC saved = cloud("a");
+        saved.getCapacityLedger().reserve("removed-template", 5, 5, 2);
+        assertEquals(2, saved.getCapacityLedger().getReserved());
+
+        VPC submitted = cloud("a");
+        submitted.setStateId(saved.getStateId());
+        assertEquals(0, submitted.getCapacityLedger().getReserved());
+    }
+}
@@ -0,0 +1,73 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class CreateJobQueueTest {
+    private CloudStatistics statistics;
+    private CreateJobQueue queue;
+    /* names of the jobs in the order they started, and the callbacks they are given */
+    private final BlockingQueue<String> started = new LinkedBlockingQueue<>();
+    private final Map<String, Runnable> done = new ConcurrentHashMap<>();
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        queue = new CreateJobQueue(statistics);
+    }
+
+    @Test
+    public void runsAtMostMaxJobsOfTemplateAtOnce() throws Exception {
+        queue.submit("linux", 2, Arrays.asList(job("a"), job("b"), job("c")));
+        assertEquals("a", started.poll(5, TimeUnit.SECONDS));
+        assertEquals("b", started.poll(5, TimeUnit.SECONDS));
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals("1", statistics.snapshot().get("provision.chunks.waiting"));
+
+        done.get("a").run();
+        assertEquals("c", started.poll(5, TimeUnit.SECONDS));
+        assertEquals("0", statistics.snapshot().get("provision.chunks.waiting"));
+    }
+
+    @Test
+    public void limitsJobsAcrossSubmissions() throws Exception {
+        queue.submit("linux", 1, Collections.singletonList(job("a")));
+        queue.submit("linux", 1, Arrays.asList(job("b"), job("c")));
+        assertEquals("a", started.poll(5, TimeUnit.SECONDS));
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+
+        done.get("a").run();
+        assertEquals("b", started.poll(5, TimeUnit.SECONDS));
+        assertNull(started.poll(100, TimeUnit.MILLISECONDS));
+        done.get("b").run();
+        assertEquals("c", started.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void templatesDoNotWaitForEachOther() throws Exception {
+        queue.submit("linux", 1, Arrays.asList(job("a"), job("b")));
+        assertEquals("a", started.poll(5, TimeUnit.SECONDS));
+
+        queue.submit("windows", 1, Collections.singletonList(job("c")));
+        assertEquals("c", started.poll(5, TimeUnit.SECONDS));
+    }
+
+    private Consumer<Runnable> job(String name) {
+        return callback -> {
+            done.put(name, callback);
+            started.add(name);
+        };
+    }
+}
@@ -0,0 +1,87 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class DemandForecasterTest {
+    private static final long HALF_LIFE = TimeUnit.MINUTES.toMillis(10);
+    private static final long SCALE_IN_DELAY = TimeUnit.MINUTES.toMillis(15);
+
+    private CloudStatistics statistics;
+    private DemandForecaster forecaster;
+    private long start;
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        forecaster = new DemandForecaster(statistics, null);
+        start = System.currentTimeMillis();
+    }
+
+    @Test
+    public void targetFollowsRisingForecastAtOnce() {
+        assertEquals(0, forecaster.observe("label", start, 0));
+        // half of the recent demand average comes from the new demand after one half life
+        assertEquals(5, forecaster.observe("label", start + HALF_LIFE, 10));
+        assertEquals(1, statistics.get("forecast.scale_out"));
+    }
+
+    @Test
+    public void targetFollowsFallingForecastOnlyAfterDelay() {
+        forecaster.observe("label", start, 0);
+        long now = start + HALF_LIFE;
+        assertEquals(5, forecaster.observe("label", now, 10));
+
+        now += HALF_LIFE;
+        assertEquals(5, forecaster.observe("label", now, 0));
+        assertEquals(5, forecaster.observe("label", now + SCALE_IN_DELAY / 2, 0));
+        assertEquals(0, statistics.get("forecast.scale_in"));
+
+        assertEquals(1, forecaster.observe("label", now + SCALE_IN_DELAY, 0));
+        assertEquals(1, statistics.get("forecast.scale_in"));
+    }
+
+    @Test
+    public void risingForecastDuringDelayRaisesTarget() {
+        forecaster.observe("label", start, 0);
+        long now = start + HALF_LIFE;
+        forecaster.observe("label", now, 10);
+        now += HALF_LIFE;
+        assertEquals(5, forecaster.observe("label", now, 0));
+        now += HALF_LIFE;
+        assertEquals(11, forecaster.observe("label", now, 20));
+        assertEquals(0, statistics.get("forecast.scale_in"));
+        assertEquals(11, forecaster.getTarget("label"));
+    }
+
+    @Test
+    public void takesHighestTargetOfPrefix() {
+        forecaster.observe("cloud/a", start, 0);
+        forecaster.observe("cloud/b", start, 0);
+        forecaster.observe("other", start, 0);
+        forecaster.observe("cloud/a", start + HALF_LIFE, 4);
+        forecaster.observe("cloud/b", start + HALF_LIFE, 6);
+        forecaster.observe("other", start + HALF_LIFE, 10);
+        assertEquals(3, forecaster.getTarget("cloud/"));
+        assertEquals(5, forecaster.getTarget(""));
+    }
+
+    @Test
+    public void dropsHistoriesNotObservedForLong() {
+        forecaster.observe("a", start, 0);
+        forecaster.observe("a", start + HALF_LIFE, 10);
+        forecaster.observe("b", start + TimeUnit.DAYS.toMillis(9), 1);
+        assertEquals(0, forecaster.getTarget("a"));
+    }
+
+    @Test
+    public void comparesForecastsWithObservedDemand() {
+        forecaster.observe("label", start, 0);
+        forecaster.observe("label", start + DemandForecaster.HORIZON, 4);
+        assertEquals("100%", statistics.snapshot().get("forecast.error"));
+    }
+}
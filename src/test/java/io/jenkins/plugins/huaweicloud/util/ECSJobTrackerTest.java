@@ -0,0 +1,123 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.ecs.v2.model.JobEntities;
+import com.huaweicloud.sdk.ecs.v2.model.ShowJobResponse;
+import com.huaweicloud.sdk.ecs.v2.model.SubJob;
+import com.huaweicloud.sdk.ecs.v2.model.SubJobEntities;
+import io.jenkins.plugins.huaweicloud.HuaweiVPC;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ECSJobTrackerTest {
+    private CloudStatistics statistics;
+    private FakeTracker tracker;
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        tracker = new FakeTracker(statistics);
+    }
+
+    @Test
+    public void completesServersOneByOne() throws Exception {
+        tracker.respond(ShowJobResponse.StatusEnum.RUNNING, subJob("sub-1", SubJob.StatusEnum.RUNNING, "i-1"));
+        List<CompletableFuture<String>> servers = tracker.track("job", 2);
+        assertEquals("i-1", servers.get(0).get(5, TimeUnit.SECONDS));
+        assertFalse(servers.get(1).isDone());
+
+        tracker.respond(ShowJobResponse.StatusEnum.SUCCESS, subJob("sub-1", SubJob.StatusEnum.SUCCESS, "i-1"),
+                subJob("sub-2", SubJob.StatusEnum.SUCCESS, "i-2"));
+        assertEquals("i-2", servers.get(1).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void failsServersTheJobEndedWithout() throws Exception {
+        tracker.respond(ShowJobResponse.StatusEnum.FAIL, subJob("sub-1", SubJob.StatusEnum.FAIL, null));
+        List<CompletableFuture<String>> servers = tracker.track("job", 2);
+        for (CompletableFuture<String> server : servers) {
+            assertFailed(server);
+        }
+        assertEquals(1, statistics.get("jobs.failed"));
+    }
+
+    @Test
+    public void completesActionsServerByServer() throws Exception {
+        tracker.respond(ShowJobResponse.StatusEnum.RUNNING, subJob("sub-1", SubJob.StatusEnum.SUCCESS, "i-1"),
+                subJob("sub-2", SubJob.StatusEnum.RUNNING, "i-2"));
+        Map<String, CompletableFuture<Void>> actions = tracker.track("job", Arrays.asList("i-1", "i-2", "i-3"));
+        actions.get("i-1").get(5, TimeUnit.SECONDS);
+        assertFalse(actions.get("i-2").isDone());
+
+        tracker.respond(ShowJobResponse.StatusEnum.RUNNING, subJob("sub-1", SubJob.StatusEnum.SUCCESS, "i-1"),
+                subJob("sub-2", SubJob.StatusEnum.FAIL, "i-2"));
+        assertFailed(actions.get("i-2"));
+        assertFalse(actions.get("i-3").isDone());
+
+        tracker.respond(ShowJobResponse.StatusEnum.SUCCESS);
+        actions.get("i-3").get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void keepsPollingAfterShowJobThrows() throws Exception {
+        tracker.failures.set(2);
+        tracker.respond(ShowJobResponse.StatusEnum.SUCCESS, subJob("sub-1", SubJob.StatusEnum.SUCCESS, "i-1"));
+        List<CompletableFuture<String>> servers = tracker.track("job", 1);
+        assertEquals("i-1", servers.get(0).get(5, TimeUnit.SECONDS));
+        assertEquals(2, statistics.get("jobs.poll.errors"));
+    }
+
+    private static void assertFailed(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof SdkException);
+        }
+    }
+
+    private static SubJob subJob(String jobId, SubJob.StatusEnum status, String serverId) {
+        return new SubJob().withJobId(jobId).withStatus(status)
+                .withEntities(new SubJobEntities().withServerId(serverId));
+    }
+
+    /**
+     * Answers every poll with the last response given to {@link #respond}, after throwing {@link #failures} times.
+     */
+    private static class FakeTracker extends ECSJobTracker {
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile ShowJobResponse response;
+
+        FakeTracker(CloudStatistics statistics) {
+            super(new HuaweiVPC("tracker", "credentials", "key", "", "vpc", Collections.emptyList()), statistics, 10, 20);
+        }
+
+        void respond(ShowJobResponse.StatusEnum status, SubJob... subJobs) {
+            response = new ShowJobResponse().withStatus(status)
+                    .withEntities(new JobEntities().withSubJobs(new ArrayList<>(Arrays.asList(subJobs))));
+        }
+
+        @Override
+        CompletableFuture<ShowJobResponse> showJob(String jobId) {
+            if (failures.getAndDecrement() > 0) {
+                throw new IllegalStateException("no client");
+            }
+            return CompletableFuture.completedFuture(response);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import io.jenkins.plugins.huaweicloud.HuaweiVPC;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstanceActionQueueTest {
+    private CloudStatistics statistics;
+    private FakeQueue queue;
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        queue = new FakeQueue(statistics);
+    }
+
+    @Test
+    public void sendsTheRequestsOfAWindowAsOneBatch() throws Exception {
+        List<CompletableFuture<Void>> deleted = new ArrayList<>();
+        for (String id : Arrays.asList("i-1", "i-2", "i-3")) {
+            deleted.add(queue.delete(id));
+        }
+        CompletableFuture<Void> repeated = queue.delete("i-1");
+        for (CompletableFuture<Void> future : deleted) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        repeated.get(5, TimeUnit.SECONDS);
+        assertEquals(Collections.singletonList(Arrays.asList("i-1", "i-2", "i-3")), queue.batches);
+        assertEquals(3, statistics.get("queue.delete.requests"));
+    }
+
+    @Test
+    public void splitsABatchRejectedAsAWhole() throws Exception {
+        queue.rejected.add("bad");
+        List<CompletableFuture<Void>> stopped = new ArrayList<>();
+        for (String id : Arrays.asList("i-1", "i-2", "bad", "i-3")) {
+            stopped.add(queue.stop(id));
+        }
+        stopped.get(0).get(5, TimeUnit.SECONDS);
+        stopped.get(1).get(5, TimeUnit.SECONDS);
+        stopped.get(3).get(5, TimeUnit.SECONDS);
+        try {
+            stopped.get(2).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ServiceResponseException);
+        }
+        assertTrue(statistics.get("queue.stop.splits") >= 2);
+    }
+
+    @Test
+    public void requeuesAnInstanceWhoseSubJobFailed() throws Exception {
+        queue.subJobFailures.put("i-2", new AtomicInteger(1));
+        CompletableFuture<Void> first = queue.delete("i-1");
+        CompletableFuture<Void> second = queue.delete("i-2");
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList(Arrays.asList("i-1", "i-2"), Collections.singletonList("i-2")), queue.batches);
+        assertEquals(1, statistics.get("queue.delete.retries"));
+    }
+
+    @Test
+    public void failsAfterTheAttemptsWhenTheRequestThrows() throws Exception {
+        queue.throwing = true;
+        try {
+            queue.delete("i-1").get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(1, statistics.get("queue.delete.failed"));
+    }
+
+    /**
+     * Rejects with a 400 the batches holding an instance of {@link #rejected}, fails the sub jobs of
+     * {@link #subJobFailures} that many times and completes the others.
+     */
+    private static class FakeQueue extends InstanceActionQueue {
+        private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+        private final List<String> rejected = new CopyOnWriteArrayList<>();
+        private final Map<String, AtomicInteger> subJobFailures = new ConcurrentHashMap<>();
+        private volatile boolean throwing;
+
+        FakeQueue(CloudStatistics statistics) {
+            super(new HuaweiVPC("queue", "credentials", "key", "", "vpc", Collections.emptyList()), statistics, 10);
+        }
+
+        @Override
+        CompletableFuture<String> submit(Action action, List<String> ids) {
+            if (throwing) {
+                throw new IllegalStateException("no client");
+            }
+            batches.add(new ArrayList<>(ids));
+            CompletableFuture<String> job = new CompletableFuture<>();
+            if (!Collections.disjoint(ids, rejected)) {
+                job.completeExceptionally(new ServiceResponseException(400, "Ecs.0005", "bad request", "r"));
+            } else {
+                job.complete("job-" + batches.size());
+            }
+            return job;
+        }
+
+        @Override
+        Map<String, CompletableFuture<Void>> track(String jobId, List<String> ids) {
+            Map<String, CompletableFuture<Void>> outcomes = new HashMap<>();
+            for (String id : ids) {
+                CompletableFuture<Void> outcome = new CompletableFuture<>();
+                AtomicInteger failures = subJobFailures.get(id);
+                if (failures != null && failures.getAndDecrement() > 0) {
+                    outcome.completeExceptionally(new SdkException("ECS sub job failed on " + id));
+                } else {
+                    outcome.complete(null);
+                }
+                outcomes.put(id, outcome);
+            }
+            return outcomes;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import io.jenkins.plugins.huaweicloud.HuaweiVPC;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstanceStatePollerTest {
+    private CloudStatistics statistics;
+    private FakePoller poller;
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        poller = new FakePoller(statistics);
+    }
+
+    @Test
+    public void completesOnceActive() throws Exception {
+        poller.states.put("i-1", "BUILD");
+        CompletableFuture<ServerDetail> running = poller.awaitRunning("i-1", 0);
+        Thread.sleep(50);
+        assertFalse(running.isDone());
+
+        poller.states.put("i-1", "ACTIVE");
+        assertEquals("i-1", running.get(5, TimeUnit.SECONDS).getId());
+    }
+
+    @Test
+    public void keepsPollingAfterListingThrows() throws Exception {
+        poller.listFailures.set(2);
+        poller.states.put("i-1", "ACTIVE");
+        CompletableFuture<ServerDetail> running = poller.awaitRunning("i-1", 0);
+        assertEquals("i-1", running.get(5, TimeUnit.SECONDS).getId());
+        assertEquals(2, statistics.get("poller.errors"));
+    }
+
+    @Test
+    public void givesUpInstanceStuckInBuild() throws Exception {
+        poller.states.put("i-1", "BUILD");
+        CompletableFuture<ServerDetail> running = poller.awaitRunning("i-1", 50);
+        try {
+            running.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals(1, statistics.get("poller.timeouts"));
+    }
+
+    @Test
+    public void givesUpInstanceInErrorState() throws Exception {
+        poller.states.put("i-1", "ERROR");
+        CompletableFuture<ServerDetail> running = poller.awaitRunning("i-1", 0);
+        try {
+            running.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    /**
+     * Answers the listing and the descriptions from {@link #states}, the listing throws {@link #listFailures} times
+     * first.
+     */
+    private static class FakePoller extends InstanceStatePoller {
+        private final Map<String, String> states = new ConcurrentHashMap<>();
+        private final AtomicInteger listFailures = new AtomicInteger();
+
+        FakePoller(CloudStatistics statistics) {
+            super(new HuaweiVPC("poller", "credentials", "key", "", "vpc", Collections.emptyList()), statistics, 10);
+        }
+
+        @Override
+        CompletableFuture<List<ServerDetail>> listBuilding() {
+            if (listFailures.getAndDecrement() > 0) {
+                throw new IllegalStateException("no client");
+            }
+            List<ServerDetail> building = new ArrayList<>();
+            for (Map.Entry<String, String> e : states.entrySet()) {
+                if ("BUILD".equals(e.getValue())) {
+                    building.add(new ServerDetail().withId(e.getKey()).withStatus(e.getValue()));
+                }
+            }
+            return CompletableFuture.completedFuture(building);
+        }
+
+        @Override
+        CompletableFuture<ServerDetail> describe(String instanceId) {
+            String state = states.get(instanceId);
+            return CompletableFuture.completedFuture(state == null ? null : new ServerDetail().withId(instanceId).withStatus(state));
+        }
+    }
+}
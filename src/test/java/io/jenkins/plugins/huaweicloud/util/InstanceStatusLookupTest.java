@@ -0,0 +1,101 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import io.jenkins.plugins.huaweicloud.HuaweiVPC;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class InstanceStatusLookupTest {
+    private CloudStatistics statistics;
+    private FakeLookup lookup;
+
+    @Before
+    public void setUp() {
+        statistics = new CloudStatistics();
+        lookup = new FakeLookup(statistics);
+    }
+
+    @Test
+    public void describeThrowingFailsTheCallerAndLaterLookupsWork() throws Exception {
+        lookup.describeFailures.set(1);
+        try {
+            lookup.get("i-1");
+            fail();
+        } catch (SdkException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertEquals("i-1", lookup.get("i-1").getId());
+    }
+
+    @Test
+    public void listingThrowingFallsBackToDescribes() throws Exception {
+        lookup.listFailures.set(1);
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+        try {
+            List<Future<ServerDetail>> answers = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                String id = "i-" + i;
+                answers.add(executor.submit((Callable<ServerDetail>) () -> lookup.get(id)));
+            }
+            for (int i = 0; i < 10; i++) {
+                assertEquals("i-" + i, answers.get(i).get(5, TimeUnit.SECONDS).getId());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sharesTheRequestInFlight() throws Exception {
+        assertEquals("i-1", lookup.get("i-1").getId());
+        assertEquals("i-1", lookup.get("i-1").getId());
+        assertEquals(1, lookup.describes.get());
+    }
+
+    /**
+     * Describes every instance as ACTIVE and lists none, the calls throw {@link #describeFailures} and
+     * {@link #listFailures} times first.
+     */
+    private static class FakeLookup extends InstanceStatusLookup {
+        private final AtomicInteger describeFailures = new AtomicInteger();
+        private final AtomicInteger listFailures = new AtomicInteger();
+        private final AtomicInteger describes = new AtomicInteger();
+
+        FakeLookup(CloudStatistics statistics) {
+            super(new HuaweiVPC("lookup", "credentials", "key", "", "vpc", Collections.emptyList()), statistics);
+        }
+
+        @Override
+        CompletableFuture<List<ServerDetail>> listServers() {
+            if (listFailures.getAndDecrement() > 0) {
+                throw new IllegalStateException("no client");
+            }
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        @Override
+        CompletableFuture<ServerDetail> showServer(String instanceId) {
+            if (describeFailures.getAndDecrement() > 0) {
+                throw new IllegalStateException("no client");
+            }
+            describes.incrementAndGet();
+            return CompletableFuture.completedFuture(new ServerDetail().withId(instanceId).withStatus("ACTIVE"));
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LaunchSchedulerTest {
+    private LaunchScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new LaunchScheduler(new CloudStatistics(), () -> 2);
+    }
+
+    @Test
+    public void admitsUpToTheLimit() {
+        CompletableFuture<LaunchScheduler.Permit> first = scheduler.admit(1);
+        CompletableFuture<LaunchScheduler.Permit> second = scheduler.admit(2);
+        CompletableFuture<LaunchScheduler.Permit> third = scheduler.admit(3);
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertFalse(third.isDone());
+        assertEquals(2, scheduler.getRunning());
+        assertEquals(1, scheduler.getQueued());
+
+        first.join().close();
+        assertTrue(third.isDone());
+        assertEquals(2, scheduler.getRunning());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    public void admitsTheOldestQueueItemFirst() {
+        CompletableFuture<LaunchScheduler.Permit> first = scheduler.admit(1);
+        scheduler.admit(2);
+        CompletableFuture<LaunchScheduler.Permit> recent = scheduler.admit(300);
+        CompletableFuture<LaunchScheduler.Permit> old = scheduler.admit(100);
+
+        first.join().close();
+        assertTrue(old.isDone());
+        assertFalse(recent.isDone());
+    }
+
+    @Test
+    public void closingTwiceReleasesOnce() {
+        CompletableFuture<LaunchScheduler.Permit> first = scheduler.admit(1);
+        scheduler.admit(2);
+        CompletableFuture<LaunchScheduler.Permit> third = scheduler.admit(3);
+        CompletableFuture<LaunchScheduler.Permit> fourth = scheduler.admit(4);
+
+        first.join().close();
+        first.join().close();
+        assertTrue(third.isDone());
+        assertFalse(fourth.isDone());
+        assertEquals(2, scheduler.getRunning());
+    }
+
+    @Test
+    public void cancelledLaunchLeavesItsTurnToTheNext() {
+        CompletableFuture<LaunchScheduler.Permit> first = scheduler.admit(1);
+        scheduler.admit(2);
+        CompletableFuture<LaunchScheduler.Permit> cancelled = scheduler.admit(3);
+        CompletableFuture<LaunchScheduler.Permit> next = scheduler.admit(4);
+
+        cancelled.cancel(false);
+        assertEquals(1, scheduler.getQueued());
+        first.join().close();
+        assertTrue(next.isDone());
+        assertEquals(2, scheduler.getRunning());
+    }
+}
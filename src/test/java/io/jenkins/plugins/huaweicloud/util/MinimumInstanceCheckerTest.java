@@ -0,0 +1,142 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import hudson.model.FreeStyleProject;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.Cloud;
+import hudson.slaves.RetentionStrategy;
+import io.jenkins.plugins.huaweicloud.ECSOndemandSlave;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.HuaweiVPC;
+import io.jenkins.plugins.huaweicloud.VolumeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MinimumInstanceCheckerTest {
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void countsTheAgentsAndWaitingBuildsOfEveryTemplate() throws Exception {
+        ECSTemplate linux = template("linux", 0);
+        ECSTemplate windows = template("windows", 0);
+        ECSTemplate otherLinux = template("linux", 0);
+        RecordingVPC cloud = cloud("first", linux, windows);
+        cloud("second", otherLinux);
+        agent(cloud, linux, "i-1");
+        agent(cloud, linux, "i-2");
+        agent(cloud, windows, "i-3");
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.setAssignedLabel(r.jenkins.getLabel("linux"));
+        project.scheduleBuild2(0);
+        r.jenkins.getQueue().maintain();
+
+        Map<ECSTemplate, MinimumInstanceChecker.TemplateCounts> counts =
+                MinimumInstanceChecker.countAll(Arrays.asList(linux, windows, otherLinux));
+        assertEquals(2, counts.get(linux).agents);
+        assertEquals(1, counts.get(windows).agents);
+        assertEquals(0, counts.get(otherLinux).agents);
+        assertEquals(0, counts.get(linux).spareAgents);
+        assertEquals(1, counts.get(linux).waitingBuilds);
+        assertEquals(0, counts.get(windows).waitingBuilds);
+        assertEquals(1, counts.get(otherLinux).waitingBuilds);
+    }
+
+    @Test
+    public void provisionsTheAgentsMissingFromTheMinimum() throws Exception {
+        ECSTemplate linux = template("linux", 3);
+        RecordingVPC cloud = cloud("cloud", linux);
+        agent(cloud, linux, "i-1");
+
+        new MinimumInstanceChecker.CheckWork().execute(TaskListener.NULL);
+        assertEquals(Collections.singletonList(2), cloud.provisioned);
+    }
+
+    @Test
+    public void countsReservationsAsComingAgents() throws Exception {
+        ECSTemplate linux = template("linux", 3);
+        RecordingVPC cloud = cloud("cloud", linux);
+        agent(cloud, linux, "i-1");
+        cloud.getCapacityLedger().reserve(linux.getFingerprint(), Integer.MAX_VALUE, Integer.MAX_VALUE, 1);
+
+        new MinimumInstanceChecker.CheckWork().execute(TaskListener.NULL);
+        assertEquals(Collections.singletonList(1), cloud.provisioned);
+    }
+
+    @Test
+    public void provisionsSpareAgentsForTheWaitingBuilds() throws Exception {
+        ECSTemplate linux = template("linux", 0);
+        linux.setMinimumNumberOfSpareInstances(1);
+        RecordingVPC cloud = cloud("cloud", linux);
+        FreeStyleProject project = r.createFreeStyleProject();
+        project.setAssignedLabel(r.jenkins.getLabel("linux"));
+        project.scheduleBuild2(0);
+        r.jenkins.getQueue().maintain();
+
+        new MinimumInstanceChecker.CheckWork().execute(TaskListener.NULL);
+        assertEquals(Collections.singletonList(2), cloud.provisioned);
+    }
+
+    @Test
+    public void leavesTemplatesOutsideTheirScheduleAlone() throws Exception {
+        ECSTemplate linux = template("linux", 3);
+        // February 31st never comes
+        linux.setMinimumInstancesSchedule("0 0 31 2 *");
+        RecordingVPC cloud = cloud("cloud", linux);
+
+        new MinimumInstanceChecker.CheckWork().execute(TaskListener.NULL);
+        assertTrue(cloud.provisioned.isEmpty());
+    }
+
+    private static ECSTemplate template(String label, int minimum) {
+        return new ECSTemplate(label, "image", "flavor", "zone", label, Node.Mode.NORMAL, "", "subnet",
+                VolumeType.SATA, VolumeType.SATA, "/home/jenkins", "40", Collections.emptyList(), "1", "30", "600",
+                "", "", Collections.emptyList(), minimum, false, false, "", "", false, "", "1");
+    }
+
+    private RecordingVPC cloud(String name, ECSTemplate... templates) {
+        RecordingVPC cloud = new RecordingVPC(name, Arrays.asList(templates));
+        r.jenkins.clouds.add(cloud);
+        return cloud;
+    }
+
+    /* an agent left offline, its retention strategy never launches it */
+    private void agent(Cloud cloud, ECSTemplate template, String instanceId) throws Exception {
+        ECSOndemandSlave agent = new ECSOndemandSlave(instanceId, instanceId, template.description, 1,
+                template.getLabelString(), Node.Mode.NORMAL, "/home/jenkins", Collections.emptyList(), "", "30",
+                Collections.emptyList(), cloud.name, 600, "", "", false);
+        agent.setRetentionStrategy(RetentionStrategy.NOOP);
+        r.jenkins.addNode(agent);
+    }
+
+    /**
+     * Records the provisioning requests instead of creating instances, and leaves the builds to the minimum checker.
+     */
+    private static class RecordingVPC extends HuaweiVPC {
+        private final List<Integer> provisioned = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingVPC(String name, List<ECSTemplate> templates) {
+            super(name, "credentials", "key", "", "vpc", templates);
+        }
+
+        @Override
+        public void provision(ECSTemplate t, int number) {
+            provisioned.add(number);
+        }
+
+        @Override
+        public boolean canProvision(Cloud.CloudState state) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import hudson.model.Descriptor;
+import hudson.model.Node;
+import io.jenkins.plugins.huaweicloud.ECSAbstractSlave;
+import io.jenkins.plugins.huaweicloud.ECSOndemandSlave;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.VolumeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ProvisioningCoalescerTest {
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void mergesTheRequestsOfATemplateWithinTheWindow() throws Exception {
+        ECSTemplate linux = template("linux");
+        RecordingCoalescer coalescer = new RecordingCoalescer(200, 3);
+        List<CompletableFuture<ECSAbstractSlave>> first = coalescer.request(linux, 1);
+        List<CompletableFuture<ECSAbstractSlave>> second = coalescer.request(linux, 2);
+
+        assertEquals("i-0", first.get(0).get(5, TimeUnit.SECONDS).getInstanceId());
+        assertEquals("i-1", second.get(0).get(5, TimeUnit.SECONDS).getInstanceId());
+        assertEquals("i-2", second.get(1).get(5, TimeUnit.SECONDS).getInstanceId());
+        assertEquals(Collections.singletonList("linux:3"), coalescer.requested);
+    }
+
+    @Test
+    public void keepsTemplatesApart() throws Exception {
+        ECSTemplate linux = template("linux");
+        ECSTemplate windows = template("windows");
+        RecordingCoalescer coalescer = new RecordingCoalescer(200, 1);
+        coalescer.request(linux, 1).get(0).get(5, TimeUnit.SECONDS);
+        coalescer.request(windows, 1).get(0).get(5, TimeUnit.SECONDS);
+
+        List<String> requested = new ArrayList<>(coalescer.requested);
+        Collections.sort(requested);
+        assertEquals(Arrays.asList("linux:1", "windows:1"), requested);
+    }
+
+    @Test
+    public void provisionsAtOnceWithoutWindow() throws Exception {
+        ECSTemplate linux = template("linux");
+        RecordingCoalescer coalescer = new RecordingCoalescer(0, 2);
+        coalescer.request(linux, 1).get(0).get(5, TimeUnit.SECONDS);
+        coalescer.request(linux, 1).get(0).get(5, TimeUnit.SECONDS);
+        assertEquals(Arrays.asList("linux:1", "linux:1"), coalescer.requested);
+    }
+
+    @Test
+    public void failsTheRequestsECSReturnedNoInstanceFor() throws Exception {
+        ECSTemplate linux = template("linux");
+        RecordingCoalescer coalescer = new RecordingCoalescer(0, 1);
+        List<CompletableFuture<ECSAbstractSlave>> slots = coalescer.request(linux, 2);
+        assertEquals("i-0", slots.get(0).get(5, TimeUnit.SECONDS).getInstanceId());
+        try {
+            slots.get(1).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    private static ECSTemplate template(String label) {
+        return new ECSTemplate(label, "image", "flavor", "zone", label, Node.Mode.NORMAL, "", "subnet",
+                VolumeType.SATA, VolumeType.SATA, "/home/jenkins", "40", Collections.emptyList(), "1", "30", "600",
+                "", "", Collections.emptyList(), 0, false, false, "", "", false, "", "1");
+    }
+
+    /**
+     * Records the merged requests as {@code description:number} and answers each with at most {@code instances}
+     * agents numbered in creation order.
+     */
+    private static class RecordingCoalescer extends ProvisioningCoalescer {
+        private final List<String> requested = Collections.synchronizedList(new ArrayList<>());
+        private final int instances;
+        private int created;
+
+        RecordingCoalescer(int window, int instances) {
+            super(new CloudStatistics(), () -> window);
+            this.instances = instances;
+        }
+
+        @Override
+        synchronized List<CompletableFuture<ECSAbstractSlave>> provisionAsync(ECSTemplate t, int number) throws IOException {
+            requested.add(t.description + ":" + number);
+            List<CompletableFuture<ECSAbstractSlave>> slaves = new ArrayList<>();
+            for (int i = 0; i < Math.min(number, instances); i++) {
+                String instanceId = "i-" + created++;
+                try {
+                    slaves.add(CompletableFuture.completedFuture(new ECSOndemandSlave(instanceId, instanceId,
+                            t.description, 1, t.getLabelString(), Node.Mode.NORMAL, "/home/jenkins",
+                            Collections.emptyList(), "", "30", Collections.emptyList(), "cloud", 600, "", "", false)));
+                } catch (Descriptor.FormException e) {
+                    throw new IOException(e);
+                }
+            }
+            return slaves;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.core.exception.SdkException;
+import com.huaweicloud.sdk.core.exception.ServiceResponseException;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void delayIsDrawnFromZeroToTheCeiling() {
+        RetryPolicy policy = new RetryPolicy(5, 100, 1000);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < 1000; i++) {
+            long delay = policy.delay(2);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+        }
+        assertTrue(min >= 0 && min < 200);
+        assertTrue(max <= 400 && max > 200);
+        assertTrue(policy.delay(20) <= 1000);
+    }
+
+    @Test
+    public void onlyTransientErrorsAreRetryable() {
+        assertTrue(RetryPolicy.isRetryable(new ServiceResponseException(429, "APIGW.0308", "throttled", "r")));
+        assertTrue(RetryPolicy.isRetryable(new ServiceResponseException(503, "Ecs.0000", "unavailable", "r")));
+        assertTrue(RetryPolicy.isRetryable(new SdkException("connection reset")));
+        assertFalse(RetryPolicy.isRetryable(new ServiceResponseException(400, "Ecs.0005", "bad request", "r")));
+    }
+
+    @Test
+    public void stopsAtTheFirstPermanentError() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, 1, 1);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.call(() -> {
+                calls.incrementAndGet();
+                throw new ServiceResponseException(400, "Ecs.0005", "bad request", "r");
+            }, null);
+            fail();
+        } catch (ServiceResponseException e) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void retriesTransientErrorsUpToTheAttempts() throws Exception {
+        RetryPolicy policy = new RetryPolicy(3, 1, 1);
+        AtomicInteger calls = new AtomicInteger();
+        try {
+            policy.call(() -> {
+                calls.incrementAndGet();
+                throw new ServiceResponseException(503, "Ecs.0000", "unavailable", "r");
+            }, null);
+            fail();
+        } catch (ServiceResponseException e) {
+            assertEquals(3, calls.get());
+        }
+    }
+}
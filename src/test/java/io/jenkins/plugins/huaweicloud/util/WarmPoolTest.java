@@ -0,0 +1,160 @@
+package io.jenkins.plugins.huaweicloud.util;
+
+import com.huaweicloud.sdk.ecs.v2.model.ServerDetail;
+import hudson.model.Node;
+import io.jenkins.plugins.huaweicloud.ECSAbstractSlave;
+import io.jenkins.plugins.huaweicloud.ECSOndemandSlave;
+import io.jenkins.plugins.huaweicloud.ECSTag;
+import io.jenkins.plugins.huaweicloud.ECSTemplate;
+import io.jenkins.plugins.huaweicloud.HuaweiVPC;
+import io.jenkins.plugins.huaweicloud.VolumeType;
+import org.junit.Rule;
+import org.junit.Test;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WarmPoolTest {
+    @Rule
+    public JenkinsRule r = new JenkinsRule();
+
+    @Test
+    public void keepsIdleAgentsUntilThePoolIsFull() throws Exception {
+        ECSTemplate linux = template(2);
+        RecordingPool pool = pool(linux);
+        pool.snapshot = snapshot(instance(linux, "i-1", "SHUTOFF"), instance(linux, "i-2", "ACTIVE"),
+                instance(linux, "i-3", "ACTIVE"));
+
+        assertTrue(pool.offer(agent(linux, "i-2")));
+        assertFalse(pool.offer(agent(linux, "i-3")));
+        assertEquals(1, pool.statistics.get("warmpool.recycled"));
+    }
+
+    @Test
+    public void leavesTemplatesWithoutPoolAlone() throws Exception {
+        ECSTemplate linux = template(0);
+        RecordingPool pool = pool(linux);
+        pool.snapshot = snapshot(instance(linux, "i-1", "ACTIVE"));
+
+        assertFalse(pool.offer(agent(linux, "i-1")));
+        pool.replenish();
+        assertTrue(pool.created.isEmpty());
+    }
+
+    @Test
+    public void createsTheMissingWarmInstances() throws Exception {
+        ECSTemplate linux = template(3);
+        RecordingPool pool = pool(linux);
+        pool.snapshot = snapshot(instance(linux, "i-1", "SHUTOFF"), instance(linux, "i-2", "ACTIVE"));
+
+        pool.replenish();
+        assertEquals(Collections.singletonList(2), pool.created);
+    }
+
+    @Test
+    public void countsTheAgentsJoiningThePoolUntilTheyAreStopped() throws Exception {
+        ECSTemplate linux = template(2);
+        RecordingPool pool = pool(linux);
+        pool.snapshot = snapshot(instance(linux, "i-1", "SHUTOFF"), instance(linux, "i-2", "ACTIVE"));
+        assertTrue(pool.offer(agent(linux, "i-2")));
+
+        pool.replenish();
+        assertTrue(pool.created.isEmpty());
+        assertEquals("1", pool.statistics.snapshot().get("warmpool.joining"));
+
+        pool.snapshot = snapshot(instance(linux, "i-1", "SHUTOFF"), instance(linux, "i-2", "SHUTOFF"));
+        pool.replenish();
+        assertTrue(pool.created.isEmpty());
+        assertTrue(pool.terminated.isEmpty());
+        assertEquals("0", pool.statistics.snapshot().get("warmpool.joining"));
+    }
+
+    @Test
+    public void terminatesTheSurplus() throws Exception {
+        ECSTemplate linux = template(1);
+        RecordingPool pool = pool(linux);
+        pool.snapshot = snapshot(instance(linux, "i-1", "SHUTOFF"), instance(linux, "i-2", "SHUTOFF"),
+                instance(linux, "i-3", "SHUTOFF"));
+
+        pool.replenish();
+        assertEquals(2, pool.terminated.size());
+        assertTrue(pool.created.isEmpty());
+    }
+
+    private static ECSTemplate template(int warmPoolSize) {
+        ECSTemplate t = new ECSTemplate("linux", "image", "flavor", "zone", "linux", Node.Mode.NORMAL, "", "subnet",
+                VolumeType.SATA, VolumeType.SATA, "/home/jenkins", "40", Collections.emptyList(), "1", "30", "600",
+                "", "", Collections.emptyList(), 0, false, false, "", "", false, "", "1");
+        t.setWarmPoolSize(warmPoolSize);
+        return t;
+    }
+
+    private RecordingPool pool(ECSTemplate t) {
+        HuaweiVPC cloud = new HuaweiVPC("cloud", "credentials", "key", "", "vpc", Collections.singletonList(t));
+        r.jenkins.clouds.add(cloud);
+        return new RecordingPool(cloud);
+    }
+
+    private static ServerDetail instance(ECSTemplate t, String instanceId, String status) {
+        return new ServerDetail().withId(instanceId).withStatus(status)
+                .withTags(Collections.singletonList(ECSTag.TAG_NAME_JENKINS_TEMPLATE + "=" + t.getFingerprint()));
+    }
+
+    /* an inventory listed from the given instances */
+    private static FleetInventory.Snapshot snapshot(ServerDetail... instances) {
+        HuaweiVPC cloud = new HuaweiVPC("inventory", "credentials", "key", "", "vpc", Collections.emptyList());
+        return new FleetInventory(cloud, new CloudStatistics()) {
+            @Override
+            protected List<ServerDetail> listServers() {
+                return Arrays.asList(instances);
+            }
+        }.forceRefresh();
+    }
+
+    private static ECSAbstractSlave agent(ECSTemplate t, String instanceId) throws Exception {
+        return new ECSOndemandSlave(instanceId, instanceId, t.description, 1, t.getLabelString(), Node.Mode.NORMAL,
+                "/home/jenkins", Collections.emptyList(), "", "30", Collections.emptyList(), "cloud", 600, "", "", false);
+    }
+
+    /**
+     * Reads the inventory from {@link #snapshot} and records the instances it would create or terminate.
+     */
+    private static class RecordingPool extends WarmPool {
+        private final CloudStatistics statistics;
+        private final List<Integer> created = new ArrayList<>();
+        private final List<String> terminated = new ArrayList<>();
+        private volatile FleetInventory.Snapshot snapshot;
+
+        RecordingPool(HuaweiVPC cloud) {
+            this(cloud, new CloudStatistics());
+        }
+
+        private RecordingPool(HuaweiVPC cloud, CloudStatistics statistics) {
+            super(cloud, statistics);
+            this.statistics = statistics;
+        }
+
+        @Override
+        FleetInventory.Snapshot inventory() {
+            return snapshot;
+        }
+
+        @Override
+        void create(ECSTemplate t, int number) {
+            created.add(number);
+        }
+
+        @Override
+        void terminate(ServerDetail instance, Map<String, ECSAbstractSlave> agents) {
+            terminated.add(instance.getId());
+        }
+    }
+}